@@ -1,23 +1,59 @@
-import lexer.Lexer;
-import lexer.Token;
+import driver.BatchDriver;
+import driver.CompilationCache;
+import driver.CompileClient;
+import driver.CompileOptions;
+import driver.CompileServer;
+import driver.SourceCompiler;
 import error.ErrorHandler;
-import parser.Parser;
-import parser.SyntaxNode;
+import lexer.Lexer;
+import parser.ByteTraceSink;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Compiler {
+    private static final String USAGE =
+            "usage: java Compiler                                   (testfile.txt -> parser.txt, error.txt)\n"
+            + "       java Compiler --batch [-o dir] [-j jobs] <file|dir|@list>...\n"
+            + "       java Compiler --server [-s socket] [-j jobs]\n"
+            + "       java Compiler --client [-s socket] [--shutdown]          (testfile.txt -> parser.txt, error.txt)";
+
     public static void main(String[] args) {
+        if (args.length > 0) {
+            switch (args[0]) {
+                case "--batch":
+                    runBatch(args);
+                    break;
+                case "--server":
+                    runServer(args);
+                    break;
+                case "--client":
+                    runClient(args);
+                    break;
+                default:
+                    usage();
+                    break;
+            }
+            return;
+        }
+        String cacheDirectory = System.getProperty(CompilationCache.CACHE_PROPERTY);
+        if (cacheDirectory != null) {
+            compileCached(Paths.get(cacheDirectory));
+            return;
+        }
         ErrorHandler errorHandler = new ErrorHandler();
-        Lexer lexer = new Lexer(errorHandler);
-        try (BufferedReader reader = new BufferedReader(new FileReader("testfile.txt"));
-            BufferedWriter parserWriter = new BufferedWriter(new FileWriter("parser.txt"))) {
-
-            List<Token> tokens = lexer.tokenize(reader);
+        boolean aborted = false;
+        try (ByteTraceSink parserSink = new ByteTraceSink(new FileOutputStream("parser.txt"))) {
 
-            Parser parser = new Parser(tokens, errorHandler, parserWriter);
-            SyntaxNode syntaxTree = parser.parse();
+            Path sourcePath = Paths.get("testfile.txt");
+            // -Dparser.recovery=true 时不合文法的单词跳到同步点继续 (会报告错误码 s);
+            // 错误超过 -Dparser.errorLimit 个时放弃整个文件
+            SourceCompiler compiler = new SourceCompiler(CompileOptions.fromSystemProperties());
+            aborted = !compiler.compile(Lexer.readSource(sourcePath), errorHandler, parserSink);
 
             // 输出错误信息
             if (errorHandler.hasErrors()) {
@@ -27,5 +63,157 @@ public class Compiler {
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        // 中止时已经写出的部分 parser.txt 没有意义
+        if (aborted) {
+            try {
+                Files.deleteIfExists(Paths.get("parser.txt"));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 带缓存的单文件模式: 按源码内容查缓存, 命中时不做词法和语法分析, 直接写出 parser.txt 和 error.txt
+     */
+    private static void compileCached(Path cacheDirectory) {
+        try {
+            byte[] source = Files.readAllBytes(Paths.get("testfile.txt"));
+            CompilationCache cache = new CompilationCache(cacheDirectory,
+                    Long.getLong(CompilationCache.CACHE_SIZE_PROPERTY, CompilationCache.DEFAULT_MAX_BYTES));
+            CompilationCache.Entry entry =
+                    cache.compile(source, new SourceCompiler(CompileOptions.fromSystemProperties()));
+            writeOrDelete(Paths.get("parser.txt"), entry.getTrace());
+            if (entry.getErrors() != null) {
+                Files.write(Paths.get("error.txt"), entry.getErrors());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 批量模式: 在一个 JVM 中编译全部源文件, 每个文件的输出写到 -o 目录 (默认 batch-out) 下的同名子目录
+     */
+    private static void runBatch(String[] args) {
+        Path outputDirectory = Paths.get("batch-out");
+        int jobs = Runtime.getRuntime().availableProcessors();
+        List<String> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-o":
+                    outputDirectory = Paths.get(requireValue(args, ++i));
+                    break;
+                case "-j":
+                    jobs = Integer.parseInt(requireValue(args, ++i));
+                    break;
+                default:
+                    inputs.add(args[i]);
+                    break;
+            }
+        }
+        if (inputs.isEmpty()) {
+            usage();
+        }
+
+        try {
+            long start = System.nanoTime();
+            BatchDriver driver = new BatchDriver(outputDirectory, jobs, CompileOptions.fromSystemProperties());
+            List<BatchDriver.Result> results = driver.run(BatchDriver.collectSources(inputs));
+            System.out.println(BatchDriver.summarize(results, System.nanoTime() - start));
+            for (BatchDriver.Result result : results) {
+                if (result.getStatus() == BatchDriver.Result.Status.FAILED) {
+                    System.err.println(result.getSource() + ": " + result.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 常驻模式: 在 Unix 域套接字上等待 --client 的请求, 直到客户端发送 --shutdown
+     */
+    private static void runServer(String[] args) {
+        Path socket = CompileServer.DEFAULT_SOCKET;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-s":
+                    socket = Paths.get(requireValue(args, ++i));
+                    break;
+                case "-j":
+                    jobs = Integer.parseInt(requireValue(args, ++i));
+                    break;
+                default:
+                    usage();
+                    break;
+            }
+        }
+        try {
+            new CompileServer(socket, jobs).serve();
+        } catch (IOException e) {
+            // 包括同一套接字上已有服务端在运行
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 把 testfile.txt 交给常驻的 --server 编译, 在当前目录写出与单文件模式相同的 parser.txt 和 error.txt
+     */
+    private static void runClient(String[] args) {
+        Path socket = CompileServer.DEFAULT_SOCKET;
+        boolean shutdown = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-s":
+                    socket = Paths.get(requireValue(args, ++i));
+                    break;
+                case "--shutdown":
+                    shutdown = true;
+                    break;
+                default:
+                    usage();
+                    break;
+            }
+        }
+        try (CompileClient client = new CompileClient(socket)) {
+            if (shutdown) {
+                client.shutdownServer();
+                return;
+            }
+            CompileClient.Response response =
+                    client.compile(Paths.get("testfile.txt"), CompileOptions.fromSystemProperties());
+            writeOrDelete(Paths.get("parser.txt"), response.getTrace());
+            if (response.getErrors() != null) {
+                Files.write(Paths.get("error.txt"), response.getErrors());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void writeOrDelete(Path path, byte[] content) throws IOException {
+        if (content == null) {
+            Files.deleteIfExists(path);
+        } else {
+            Files.write(path, content);
+        }
+    }
+
+    private static String requireValue(String[] args, int index) {
+        if (index >= args.length) {
+            usage();
+        }
+        return args[index];
+    }
+
+    private static void usage() {
+        System.err.println(USAGE);
+        System.exit(2);
     }
-}
\ No newline at end of file
+}
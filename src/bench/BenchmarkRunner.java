@@ -0,0 +1,90 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * 简单的微基准测试运行器: 先预热再计时, 同时统计当前线程的内存分配量.
+ * 每次操作返回一个校验值并累加到 volatile 字段, 防止 JIT 消除无用计算
+ */
+public final class BenchmarkRunner {
+    public interface Operation {
+        /**
+         * 执行一轮被测操作, 返回校验值
+         */
+        long run();
+    }
+
+    public static final class Result {
+        private final String name;
+        private final double nanosPerIteration;
+        private final double bytesPerIteration;
+
+        Result(String name, double nanosPerIteration, double bytesPerIteration) {
+            this.name = name;
+            this.nanosPerIteration = nanosPerIteration;
+            this.bytesPerIteration = bytesPerIteration;
+        }
+
+        public String getName() { return name; }
+        public double getNanosPerIteration() { return nanosPerIteration; }
+        public double getBytesPerIteration() { return bytesPerIteration; }
+    }
+
+    private static volatile long sink;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+
+    public BenchmarkRunner(int warmupIterations, int measurementIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+    }
+
+    /**
+     * 运行一个基准, opsPerIteration 为每轮包含的操作数, 用于换算 ns/op
+     */
+    public Result run(String name, long opsPerIteration, Operation operation) {
+        Result result = measure(name, operation);
+        System.out.println(String.format(Locale.ROOT, "%-40s %12.2f ns/op %12.2f B/op",
+                name,
+                result.nanosPerIteration / opsPerIteration,
+                result.bytesPerIteration / opsPerIteration));
+        return result;
+    }
+
+    /**
+     * 运行一个基准但不输出, 由调用方自行换算吞吐量
+     */
+    public Result measure(String name, Operation operation) {
+        for (int i = 0; i < warmupIterations; i++) {
+            sink += operation.run();
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < measurementIterations; i++) {
+            sink += operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        return new Result(name,
+                (double) elapsed / measurementIterations,
+                allocated < 0 ? Double.NaN : (double) allocated / measurementIterations);
+    }
+
+    /**
+     * 当前线程累计分配的字节数, 虚拟机不支持时返回 -1
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            if (threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled()) {
+                return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,103 @@
+package bench;
+
+import lexer.Keyword;
+import lexer.KeywordRecognizer;
+import lexer.TokenType;
+
+import java.util.Random;
+
+/**
+ * 对比 Keyword 的 HashMap 查表与 KeywordRecognizer 的自动机识别.
+ * 运行: java bench.KeywordBenchmark
+ */
+public class KeywordBenchmark {
+    private static final String[] WORDS = {
+            "const", "int", "static", "break", "continue", "if", "else", "for",
+            "return", "void", "main", "printf",
+            "a", "i", "count", "index", "arr", "result", "temp_value", "_x1",
+            "integer", "format", "mainly", "iffy", "returned", "constant"
+    };
+    private static final String OPERATOR_CHARS = "!&|+-*/%<>=;,()[]{}";
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder();
+        int wordCount = 4096;
+        int[] starts = new int[wordCount];
+        int[] lengths = new int[wordCount];
+        for (int i = 0; i < wordCount; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            starts[i] = text.length();
+            lengths[i] = word.length();
+            text.append(word).append(' ');
+        }
+        int operatorCount = 4096;
+        char[] firsts = new char[operatorCount];
+        char[] seconds = new char[operatorCount];
+        for (int i = 0; i < operatorCount; i++) {
+            firsts[i] = OPERATOR_CHARS.charAt(random.nextInt(OPERATOR_CHARS.length()));
+            seconds[i] = OPERATOR_CHARS.charAt(random.nextInt(OPERATOR_CHARS.length()));
+        }
+        String source = text.toString();
+        checkAgreement(source, starts, lengths, firsts, seconds);
+
+        BenchmarkRunner runner = new BenchmarkRunner(2000, 5000);
+        runner.run("word: HashMap isKeyword+getTokenType", wordCount, () -> {
+            long sum = 0;
+            for (int i = 0; i < wordCount; i++) {
+                String word = source.substring(starts[i], starts[i] + lengths[i]);
+                TokenType type = Keyword.isKeyword(word) ? Keyword.getTokenType(word) : TokenType.IDENFR;
+                sum += type.ordinal();
+            }
+            return sum;
+        });
+        runner.run("word: KeywordRecognizer", wordCount, () -> {
+            long sum = 0;
+            for (int i = 0; i < wordCount; i++) {
+                TokenType type = KeywordRecognizer.match(source, starts[i], lengths[i]);
+                sum += type != null ? type.ordinal() : TokenType.IDENFR.ordinal();
+            }
+            return sum;
+        });
+        runner.run("operator: HashMap substring lookup", operatorCount, () -> {
+            long sum = 0;
+            for (int i = 0; i < operatorCount; i++) {
+                String twoCharOp = new String(new char[]{firsts[i], seconds[i]});
+                TokenType type = Keyword.isKeyword(twoCharOp) ? Keyword.getTokenType(twoCharOp)
+                        : Keyword.getTokenType(Character.toString(firsts[i]));
+                sum += type != null ? type.ordinal() : -1;
+            }
+            return sum;
+        });
+        runner.run("operator: KeywordRecognizer", operatorCount, () -> {
+            long sum = 0;
+            for (int i = 0; i < operatorCount; i++) {
+                TokenType type = KeywordRecognizer.match(firsts[i], seconds[i]);
+                if (type == null) {
+                    type = KeywordRecognizer.match(firsts[i]);
+                }
+                sum += type != null ? type.ordinal() : -1;
+            }
+            return sum;
+        });
+    }
+
+    /**
+     * 计时前先确认两种实现对所有样本给出相同的结果
+     */
+    private static void checkAgreement(String source, int[] starts, int[] lengths, char[] firsts, char[] seconds) {
+        for (int i = 0; i < starts.length; i++) {
+            String word = source.substring(starts[i], starts[i] + lengths[i]);
+            if (Keyword.getTokenType(word) != KeywordRecognizer.match(source, starts[i], lengths[i])) {
+                throw new IllegalStateException("Recognizer disagrees on " + word);
+            }
+        }
+        for (int i = 0; i < firsts.length; i++) {
+            String twoCharOp = new String(new char[]{firsts[i], seconds[i]});
+            if (Keyword.getTokenType(twoCharOp) != KeywordRecognizer.match(firsts[i], seconds[i])
+                    || Keyword.getTokenType(Character.toString(firsts[i])) != KeywordRecognizer.match(firsts[i])) {
+                throw new IllegalStateException("Recognizer disagrees on " + twoCharOp);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package bench;
+
+import error.ErrorHandler;
+import lexer.Lexer;
+import lexer.Token;
+import lexer.TokenBuffer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Locale;
+
+/**
+ * Lexer 吞吐量与内存分配基准.
+ * 运行: java bench.LexerBenchmark [输入大小KB] [标识符密度] [注释比例] [printf密度] [行长]
+ * 对每个场景输出 MB/s, 百万单词/s 以及每字符分配的字节数;
+ * 专项场景的输入只包含标识符, 数字, 运算符或多行注释, 分别对应 Lexer 的各个处理函数;
+ * fast scan 场景开启 Lexer.setFastScan, 与同一输入的标量路径对比
+ */
+public class LexerBenchmark {
+    public static void main(String[] args) {
+        int kilobytes = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        double identifierDensity = args.length > 1 ? Double.parseDouble(args[1]) : 0.6;
+        double commentRatio = args.length > 2 ? Double.parseDouble(args[2]) : 0.2;
+        double printfDensity = args.length > 3 ? Double.parseDouble(args[3]) : 0.1;
+        int lineLength = args.length > 4 ? Integer.parseInt(args[4]) : 80;
+        int chars = kilobytes * 1024;
+
+        String mixed = new SourceGenerator(identifierDensity, commentRatio, printfDensity, lineLength, 42)
+                .generate(chars);
+        BenchmarkRunner runner = new BenchmarkRunner(10, 20);
+
+        System.out.println(String.format(Locale.ROOT, "%-36s %10s %12s %10s", "scenario", "MB/s", "Mtokens/s", "B/char"));
+        report(runner, "mixed: line mode (BufferedReader)", mixed, LexerBenchmark::lineMode);
+        report(runner, "mixed: buffer mode (TokenBuffer)", mixed, LexerBenchmark::bufferMode);
+        report(runner, "mixed: pull mode (nextToken)", mixed, LexerBenchmark::pullMode);
+        report(runner, "mixed: buffer mode, fast scan", mixed, LexerBenchmark::fastScanMode);
+        report(runner, "processIdentifier: line mode", SourceGenerator.identifiersOnly(chars), LexerBenchmark::lineMode);
+        report(runner, "processIdentifier: buffer mode", SourceGenerator.identifiersOnly(chars), LexerBenchmark::bufferMode);
+        report(runner, "processNumber: line mode", SourceGenerator.numbersOnly(chars), LexerBenchmark::lineMode);
+        report(runner, "processNumber: buffer mode", SourceGenerator.numbersOnly(chars), LexerBenchmark::bufferMode);
+        report(runner, "processOperator: line mode", SourceGenerator.operatorsOnly(chars), LexerBenchmark::lineMode);
+        report(runner, "processOperator: buffer mode", SourceGenerator.operatorsOnly(chars), LexerBenchmark::bufferMode);
+        report(runner, "processMultiLineComment: line mode", SourceGenerator.multiLineComments(chars), LexerBenchmark::lineMode);
+        report(runner, "processMultiLineComment: buffer mode", SourceGenerator.multiLineComments(chars), LexerBenchmark::bufferMode);
+        report(runner, "processMultiLineComment: fast scan", SourceGenerator.multiLineComments(chars), LexerBenchmark::fastScanMode);
+
+        String commented = new SourceGenerator(identifierDensity, 0.9, printfDensity, lineLength, 42).generate(chars);
+        String indented = SourceGenerator.deeplyIndented(chars);
+        report(runner, "comment-heavy: buffer mode", commented, LexerBenchmark::bufferMode);
+        report(runner, "comment-heavy: fast scan", commented, LexerBenchmark::fastScanMode);
+        report(runner, "indentation-heavy: buffer mode", indented, LexerBenchmark::bufferMode);
+        report(runner, "indentation-heavy: fast scan", indented, LexerBenchmark::fastScanMode);
+    }
+
+    private interface Scenario {
+        /**
+         * 扫描 source 并返回单词数
+         */
+        long tokenize(String source);
+    }
+
+    private static void report(BenchmarkRunner runner, String name, String source, Scenario scenario) {
+        long tokens = scenario.tokenize(source);
+        BenchmarkRunner.Result result = runner.measure(name, () -> scenario.tokenize(source));
+        double seconds = result.getNanosPerIteration() / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%-36s %10.1f %12.2f %10.2f",
+                name,
+                source.length() / seconds / (1024 * 1024),
+                tokens / seconds / 1e6,
+                result.getBytesPerIteration() / source.length()));
+    }
+
+    private static long lineMode(String source) {
+        try {
+            return new Lexer(new ErrorHandler()).tokenize(new BufferedReader(new StringReader(source))).size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long bufferMode(String source) {
+        TokenBuffer tokens = new Lexer(new ErrorHandler()).tokenizeToBuffer(CharBuffer.wrap(source));
+        return tokens.size();
+    }
+
+    private static long fastScanMode(String source) {
+        Lexer lexer = new Lexer(new ErrorHandler());
+        lexer.setFastScan(true);
+        return lexer.tokenizeToBuffer(CharBuffer.wrap(source)).size();
+    }
+
+    private static long pullMode(String source) {
+        Lexer lexer = new Lexer(new ErrorHandler());
+        lexer.reset(CharBuffer.wrap(source));
+        long count = 0;
+        for (Token token = lexer.nextToken(); token != null; token = lexer.nextToken()) {
+            count++;
+        }
+        return count;
+    }
+}
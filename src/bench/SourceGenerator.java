@@ -0,0 +1,148 @@
+package bench;
+
+import java.util.Random;
+
+/**
+ * 生成用于基准测试的合成 SysY 源程序, 可以调节:
+ * 标识符密度 (操作数中标识符所占比例), 注释比例 (每行后附注释的概率),
+ * printf 密度 (语句为 printf 的概率) 以及目标行长
+ */
+public class SourceGenerator {
+    private static final String[] NAMES = {
+            "a", "b", "i", "j", "n", "sum", "count", "index", "result", "temp_value",
+            "matrix", "row", "col", "_tmp", "value1", "value2", "limit", "offset"
+    };
+    private static final String[] BINARY_OPS = {"+", "-", "*", "/", "%"};
+    private static final String[] COMPARE_OPS = {"<", ">", "<=", ">=", "==", "!="};
+
+    private final double identifierDensity;
+    private final double commentRatio;
+    private final double printfDensity;
+    private final int lineLength;
+    private final Random random;
+
+    public SourceGenerator(double identifierDensity, double commentRatio, double printfDensity,
+                           int lineLength, long seed) {
+        this.identifierDensity = identifierDensity;
+        this.commentRatio = commentRatio;
+        this.printfDensity = printfDensity;
+        this.lineLength = Math.max(lineLength, 16);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * 生成至少 targetChars 个字符的程序: 若干函数, 最后是 main
+     */
+    public String generate(int targetChars) {
+        StringBuilder sb = new StringBuilder(targetChars + 1024);
+        sb.append("const int N = 100;\n");
+        int function = 0;
+        while (sb.length() < targetChars) {
+            sb.append("int f").append(function++).append("(int a, int b[]) {\n");
+            sb.append("    int i, j = 0, sum = 0;\n");
+            int statements = 8 + random.nextInt(24);
+            for (int k = 0; k < statements; k++) {
+                appendStatement(sb);
+            }
+            sb.append("    return sum;\n}\n");
+        }
+        sb.append("int main() {\n    return 0;\n}\n");
+        return sb.toString();
+    }
+
+    private void appendStatement(StringBuilder sb) {
+        int lineStart = sb.length();
+        sb.append("    ");
+        double choice = random.nextDouble();
+        if (choice < printfDensity) {
+            sb.append("printf(\"value %d of %d\\n\", ");
+            appendExpression(sb, lineStart);
+            sb.append(", ");
+            appendOperand(sb);
+            sb.append(");");
+        } else if (choice < printfDensity + (1 - printfDensity) * 0.2) {
+            sb.append("if (");
+            appendOperand(sb);
+            sb.append(' ').append(COMPARE_OPS[random.nextInt(COMPARE_OPS.length)]).append(' ');
+            appendOperand(sb);
+            sb.append(" && j != 0) sum = sum + 1;");
+        } else {
+            sb.append(NAMES[random.nextInt(NAMES.length)]).append(" = ");
+            appendExpression(sb, lineStart);
+            sb.append(';');
+        }
+        appendComment(sb);
+        sb.append('\n');
+    }
+
+    /**
+     * 追加操作数和运算符, 直到本行接近目标行长
+     */
+    private void appendExpression(StringBuilder sb, int lineStart) {
+        appendOperand(sb);
+        while (sb.length() - lineStart < lineLength - 12) {
+            sb.append(' ').append(BINARY_OPS[random.nextInt(BINARY_OPS.length)]).append(' ');
+            appendOperand(sb);
+        }
+    }
+
+    private void appendOperand(StringBuilder sb) {
+        if (random.nextDouble() < identifierDensity) {
+            sb.append(NAMES[random.nextInt(NAMES.length)]);
+        } else {
+            sb.append(random.nextInt(100000));
+        }
+    }
+
+    private void appendComment(StringBuilder sb) {
+        if (random.nextDouble() >= commentRatio) {
+            return;
+        }
+        if (random.nextBoolean()) {
+            sb.append(" // update running value");
+        } else {
+            sb.append(" /* the value is folded\n       into the running sum */");
+        }
+    }
+
+    // 以下输入只触发单一的扫描路径, 用于分别测量各个处理函数
+
+    public static String identifiersOnly(int targetChars) {
+        return repeat(targetChars, "alpha beta_1 gamma _delta epsilon value2 mainly iffy\n");
+    }
+
+    public static String numbersOnly(int targetChars) {
+        return repeat(targetChars, "0 7 42 1024 65535 2147483647 123456789 99\n");
+    }
+
+    public static String operatorsOnly(int targetChars) {
+        return repeat(targetChars, "+ - * % < <= > >= == != = ! && || ; , ( ) [ ] { }\n");
+    }
+
+    public static String multiLineComments(int targetChars) {
+        return repeat(targetChars, "/* a block comment that spans\n * several lines of text\n * before it ends */\n");
+    }
+
+    /**
+     * 深层嵌套的代码块, 每行大部分是缩进空白
+     */
+    public static String deeplyIndented(int targetChars) {
+        StringBuilder unit = new StringBuilder();
+        for (int depth = 1; depth <= 12; depth++) {
+            unit.append(" ".repeat(depth * 4)).append("{\n");
+        }
+        for (int depth = 12; depth >= 1; depth--) {
+            unit.append(" ".repeat(depth * 4 + 4)).append("sum = sum + 1;\n");
+            unit.append(" ".repeat(depth * 4)).append("}\n");
+        }
+        return repeat(targetChars, unit.toString());
+    }
+
+    private static String repeat(int targetChars, String unit) {
+        StringBuilder sb = new StringBuilder(targetChars + unit.length());
+        while (sb.length() < targetChars) {
+            sb.append(unit);
+        }
+        return sb.toString();
+    }
+}
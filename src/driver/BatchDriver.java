@@ -0,0 +1,319 @@
+package driver;
+
+import error.ErrorHandler;
+import lexer.Lexer;
+import parser.ByteTraceSink;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 在一个 JVM 中批量编译多个源文件. 每个文件分三步: 读入源码和写出结果在 I/O 执行器上 (有虚拟线程时每个任务一个虚拟线程,
+ * 否则是固定大小的平台线程池), 词法和语法分析在 jobs 个平台线程上. 每个任务有独立的 Lexer, Parser 和 ErrorHandler,
+ * 输出写到 outputDirectory 下以源文件名命名的子目录中, 内容与单独运行 Compiler 相同.
+ * 同时在途的文件不超过 jobs 的两倍, 源码和输出不会全部堆在内存中
+ */
+public class BatchDriver {
+    private static final String SUMMARY_FILE = "summary.tsv";
+
+    private final Path outputDirectory;
+    private final int jobs;
+    private final SourceCompiler compiler;
+
+    public BatchDriver(Path outputDirectory, int jobs, CompileOptions options) {
+        this.outputDirectory = outputDirectory;
+        this.jobs = Math.max(jobs, 1);
+        this.compiler = new SourceCompiler(options);
+    }
+
+    public static final class Result {
+        public enum Status { OK, ABORTED, FAILED }
+
+        private final Path source;
+        private final Path outputDirectory;
+        private final Status status;
+        private final int errorCount;
+        private final long readNanos;
+        private final long compileNanos;
+        private final long writeNanos;
+        private final String message;
+
+        Result(Path source, Path outputDirectory, Status status, int errorCount,
+               long readNanos, long compileNanos, long writeNanos, String message) {
+            this.source = source;
+            this.outputDirectory = outputDirectory;
+            this.status = status;
+            this.errorCount = errorCount;
+            this.readNanos = readNanos;
+            this.compileNanos = compileNanos;
+            this.writeNanos = writeNanos;
+            this.message = message;
+        }
+
+        public Path getSource() { return source; }
+        public Path getOutputDirectory() { return outputDirectory; }
+        public Status getStatus() { return status; }
+        public int getErrorCount() { return errorCount; }
+        public long getReadNanos() { return readNanos; }
+        public long getCompileNanos() { return compileNanos; }
+        public long getWriteNanos() { return writeNanos; }
+        /** 失败原因, 其他情况为 null */
+        public String getMessage() { return message; }
+    }
+
+    /**
+     * 单个任务在各步之间传递的状态
+     */
+    private static final class Job {
+        final Path source;
+        final Path outputDirectory;
+        CharBuffer text;
+        byte[] trace;
+        byte[] errors;
+        int errorCount;
+        boolean aborted;
+        long readNanos;
+        long compileNanos;
+        long writeNanos;
+
+        Job(Path source, Path outputDirectory) {
+            this.source = source;
+            this.outputDirectory = outputDirectory;
+        }
+    }
+
+    /**
+     * 展开命令行参数: 目录取其中全部 .txt 文件 (按路径排序, 不递归), @file 逐行列出源文件, 其他参数本身就是源文件
+     */
+    public static List<Path> collectSources(List<String> arguments) throws IOException {
+        List<Path> sources = new ArrayList<>();
+        for (String argument : arguments) {
+            if (argument.startsWith("@")) {
+                for (String line : Files.readAllLines(Paths.get(argument.substring(1)))) {
+                    if (!line.trim().isEmpty()) {
+                        sources.add(Paths.get(line.trim()));
+                    }
+                }
+                continue;
+            }
+            Path path = Paths.get(argument);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    files.filter(file -> Files.isRegularFile(file) && file.getFileName().toString().endsWith(".txt"))
+                            .sorted()
+                            .forEach(sources::add);
+                }
+            } else {
+                sources.add(path);
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * 编译全部 sources, 按输入顺序返回每个文件的结果, 并在 outputDirectory 中写出 summary.tsv
+     */
+    public List<Result> run(List<Path> sources) throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        List<Path> directories = assignDirectories(sources);
+        ExecutorService io = newIoExecutor(jobs * 2);
+        ExecutorService cpu = Executors.newFixedThreadPool(jobs, daemonThreads("compile"));
+        Semaphore inFlight = new Semaphore(jobs * 2);
+        List<CompletableFuture<Result>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                Job job = new Job(sources.get(i), directories.get(i));
+                inFlight.acquire();
+                CompletableFuture<Result> future = CompletableFuture.supplyAsync(() -> read(job), io)
+                        .thenApplyAsync(this::compile, cpu)
+                        .thenApplyAsync(this::write, io)
+                        .exceptionally(e -> failed(job, e))
+                        .whenComplete((result, e) -> inFlight.release());
+                futures.add(future);
+            }
+            List<Result> results = new ArrayList<>();
+            for (CompletableFuture<Result> future : futures) {
+                results.add(future.join());
+            }
+            writeSummary(results);
+            return results;
+        } finally {
+            io.shutdown();
+            cpu.shutdown();
+            io.awaitTermination(1, TimeUnit.MINUTES);
+            cpu.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private Job read(Job job) {
+        long start = System.nanoTime();
+        try {
+            job.text = Lexer.readSource(job.source);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        job.readNanos = System.nanoTime() - start;
+        return job;
+    }
+
+    private Job compile(Job job) {
+        long start = System.nanoTime();
+        ErrorHandler errorHandler = new ErrorHandler();
+        // parser.txt 通常是源码的数倍, 预留的初始容量有上限
+        ByteArrayOutputStream trace = new ByteArrayOutputStream((int) Math.min(job.text.remaining() * 4L, 1 << 26));
+        try (ByteTraceSink sink = new ByteTraceSink(trace)) {
+            job.aborted = !compiler.compile(job.text, errorHandler, sink);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        job.text = null;
+        job.trace = job.aborted ? null : trace.toByteArray();
+        job.errorCount = errorHandler.getErrorCount();
+        if (errorHandler.hasErrors()) {
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            try {
+                errorHandler.writeErrors(errors);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            job.errors = errors.toByteArray();
+        }
+        job.compileNanos = System.nanoTime() - start;
+        return job;
+    }
+
+    private Result write(Job job) {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(job.outputDirectory);
+            // 与 Compiler 相同: 中止时没有 parser.txt, 没有错误时没有 error.txt
+            writeOrDelete(job.outputDirectory.resolve("parser.txt"), job.trace);
+            writeOrDelete(job.outputDirectory.resolve("error.txt"), job.errors);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        job.writeNanos = System.nanoTime() - start;
+        return new Result(job.source, job.outputDirectory, job.aborted ? Result.Status.ABORTED : Result.Status.OK,
+                job.errorCount, job.readNanos, job.compileNanos, job.writeNanos, null);
+    }
+
+    private static void writeOrDelete(Path path, byte[] content) throws IOException {
+        if (content == null) {
+            Files.deleteIfExists(path);
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(path)) {
+            out.write(content);
+        }
+    }
+
+    private static Result failed(Job job, Throwable e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        return new Result(job.source, job.outputDirectory, Result.Status.FAILED, job.errorCount,
+                job.readNanos, job.compileNanos, job.writeNanos, cause.toString());
+    }
+
+    /**
+     * 每个源文件一个输出子目录, 以去掉 .txt 的文件名命名, 重名时依次加上 -2, -3 ...
+     */
+    private List<Path> assignDirectories(List<Path> sources) {
+        Set<String> used = new HashSet<>();
+        List<Path> directories = new ArrayList<>();
+        for (Path source : sources) {
+            String name = source.getFileName().toString();
+            if (name.endsWith(".txt")) {
+                name = name.substring(0, name.length() - 4);
+            }
+            String unique = name;
+            for (int suffix = 2; !used.add(unique); suffix++) {
+                unique = name + "-" + suffix;
+            }
+            directories.add(outputDirectory.resolve(unique));
+        }
+        return directories;
+    }
+
+    private void writeSummary(List<Result> results) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(outputDirectory.resolve(SUMMARY_FILE), StandardCharsets.UTF_8)) {
+            writer.write("source\tstatus\terrors\tread_ms\tcompile_ms\twrite_ms\tmessage");
+            writer.newLine();
+            for (Result result : results) {
+                writer.write(String.format(Locale.ROOT, "%s\t%s\t%d\t%.3f\t%.3f\t%.3f\t%s",
+                        result.getSource(), result.getStatus(), result.getErrorCount(),
+                        result.getReadNanos() / 1e6, result.getCompileNanos() / 1e6, result.getWriteNanos() / 1e6,
+                        result.getMessage() == null ? "" : result.getMessage()));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * 一行汇总: 文件数, 各状态的数量, 错误总数和各步耗时之和
+     */
+    public static String summarize(List<Result> results, long wallNanos) {
+        int ok = 0;
+        int aborted = 0;
+        int failed = 0;
+        long errors = 0;
+        long read = 0;
+        long compile = 0;
+        long write = 0;
+        for (Result result : results) {
+            switch (result.getStatus()) {
+                case OK: ok++; break;
+                case ABORTED: aborted++; break;
+                default: failed++; break;
+            }
+            errors += result.getErrorCount();
+            read += result.getReadNanos();
+            compile += result.getCompileNanos();
+            write += result.getWriteNanos();
+        }
+        return String.format(Locale.ROOT,
+                "files=%d ok=%d aborted=%d failed=%d errors=%d wall_ms=%.1f read_ms=%.1f compile_ms=%.1f write_ms=%.1f",
+                results.size(), ok, aborted, failed, errors, wallNanos / 1e6, read / 1e6, compile / 1e6, write / 1e6);
+    }
+
+    /**
+     * JDK 21 起用每任务一个虚拟线程的执行器; 更早的 JDK 没有该方法 (或需要预览开关), 退回固定大小的平台线程池
+     */
+    static ExecutorService newIoExecutor(int fallbackThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newFixedThreadPool(fallbackThreads, daemonThreads("batch-io"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        ThreadFactory defaults = Executors.defaultThreadFactory();
+        return runnable -> {
+            Thread thread = defaults.newThread(runnable);
+            thread.setName(prefix + "-" + thread.getName());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
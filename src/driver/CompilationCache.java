@@ -0,0 +1,263 @@
+package driver;
+
+import error.ErrorHandler;
+import parser.ByteTraceSink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以内容寻址的磁盘编译缓存. 键是 SHA-256(编译器版本, 选项, 默认字符集, 行分隔符, 源码字节),
+ * 每个键一个文件, 保存 parser.txt, error.txt 以及是否中止. 写入先写同目录下的临时文件再原子改名,
+ * 并行构建的多个进程共用一个目录时读者只会看到完整的条目. 命中时更新条目的修改时间,
+ * 总大小超过上限时按修改时间淘汰最久未用的条目
+ */
+public class CompilationCache {
+    /** -Dcompiler.cache=DIR 为单文件模式开启缓存, -Dcompiler.cacheSize 是条目总大小上限 (字节) */
+    public static final String CACHE_PROPERTY = "compiler.cache";
+    public static final String CACHE_SIZE_PROPERTY = "compiler.cacheSize";
+    public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int ENTRY_MAGIC = 0x43434531;
+    // 写入进程崩溃留下的临时文件超过该时间后在淘汰时删除
+    private static final long STALE_TEMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public CompilationCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 一次编译的全部输出
+     */
+    public static final class Entry {
+        private final boolean aborted;
+        private final byte[] trace;
+        private final byte[] errors;
+        private final boolean hit;
+
+        Entry(boolean aborted, byte[] trace, byte[] errors, boolean hit) {
+            this.aborted = aborted;
+            this.trace = trace;
+            this.errors = errors;
+            this.hit = hit;
+        }
+
+        /** 错误超过预算, 此时没有 parser.txt */
+        public boolean isAborted() { return aborted; }
+        /** parser.txt 的内容, 中止时为 null */
+        public byte[] getTrace() { return trace; }
+        /** error.txt 的内容, 没有错误时为 null */
+        public byte[] getErrors() { return errors; }
+        /** 是否来自缓存 */
+        public boolean isHit() { return hit; }
+    }
+
+    /**
+     * 源码 (默认字符集编码的字节) 在 compiler 的选项下的输出: 命中时直接返回, 不做词法分析;
+     * 否则编译并写入缓存. 缓存目录读写失败只会退化为重新编译
+     */
+    public Entry compile(byte[] source, SourceCompiler compiler) {
+        String key = key(source, compiler.getOptions());
+        Entry cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        ErrorHandler errorHandler = new ErrorHandler();
+        ByteArrayOutputStream trace = new ByteArrayOutputStream((int) Math.min(source.length * 4L, 1 << 26));
+        boolean aborted;
+        try (ByteTraceSink sink = new ByteTraceSink(trace)) {
+            aborted = !compiler.compile(Charset.defaultCharset().decode(ByteBuffer.wrap(source)), errorHandler, sink);
+        } catch (IOException e) {
+            // 输出到内存, 不会发生
+            throw new IllegalStateException(e);
+        }
+        byte[] errors = null;
+        if (errorHandler.hasErrors()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                errorHandler.writeErrors(out);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            errors = out.toByteArray();
+        }
+        Entry entry = new Entry(aborted, aborted ? null : trace.toByteArray(), errors, false);
+        try {
+            store(key, entry);
+        } catch (IOException e) {
+            // 缓存不可写时照常返回编译结果
+        }
+        return entry;
+    }
+
+    /**
+     * 缓存键: 编译器版本和选项改变时旧条目自然失效. 源码的解码和输出的编码都用默认字符集,
+     * error.txt 的行分隔符随平台变化, 因此两者也计入键中
+     */
+    public static String key(byte[] source, CompileOptions options) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String prefix = SourceCompiler.VERSION + '\0' + options + '\0' + Charset.defaultCharset().name()
+                + '\0' + System.lineSeparator() + '\0';
+        digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+        digest.update(source);
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 读出 key 对应的条目, 不存在或内容不完整时返回 null
+     */
+    public Entry lookup(String key) {
+        Path path = directory.resolve(key + ENTRY_SUFFIX);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            long size = Files.size(path);
+            if (in.readInt() != ENTRY_MAGIC) {
+                return null;
+            }
+            boolean aborted = in.readBoolean();
+            byte[] trace = readBlock(in, size);
+            byte[] errors = readBlock(in, size);
+            if (in.read() != -1) {
+                return null;
+            }
+            touch(path);
+            return new Entry(aborted, trace, errors, true);
+        } catch (IOException e) {
+            // 不存在, 被并发淘汰, 或是损坏的条目
+            return null;
+        }
+    }
+
+    /**
+     * 写入条目: 先写临时文件, 再原子改名为最终文件名, 随后按大小上限淘汰
+     */
+    public void store(String key, Entry entry) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(ENTRY_MAGIC);
+                out.writeBoolean(entry.isAborted());
+                writeBlock(out, entry.getTrace());
+                writeBlock(out, entry.getErrors());
+            }
+            Path target = directory.resolve(key + ENTRY_SUFFIX);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                // 同一目录内的改名在常见文件系统上都是原子的, 这里只是兜底
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        evict();
+    }
+
+    /**
+     * 条目总大小超过 maxBytes 时, 从最久未使用的开始删除. 多个进程同时淘汰时, 已被删除的文件直接跳过
+     */
+    public void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                BasicFileAttributes attribute;
+                try {
+                    attribute = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (name.endsWith(ENTRY_SUFFIX)) {
+                    entries.add(file);
+                    attributes.add(attribute);
+                    total += attribute.size();
+                } else if (name.endsWith(TEMP_SUFFIX) && now - attribute.lastModifiedTime().toMillis() > STALE_TEMP_MILLIS) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+        for (int i = 0; i < order.length && total > maxBytes; i++) {
+            Files.deleteIfExists(entries.get(order[i]));
+            total -= attributes.get(order[i]).size();
+        }
+    }
+
+    private static void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // 条目刚被淘汰, 不影响这次命中
+        }
+    }
+
+    private static void writeBlock(DataOutputStream out, byte[] block) throws IOException {
+        if (block == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(block.length);
+        out.write(block);
+    }
+
+    private static byte[] readBlock(DataInputStream in, long entrySize) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > entrySize) {
+            throw new IOException("corrupt cache entry");
+        }
+        byte[] block = new byte[length];
+        in.readFully(block);
+        return block;
+    }
+}
@@ -0,0 +1,109 @@
+package driver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * CompileServer 的客户端. 一个客户端对应一条连接, 可以依次发送多个请求, 不是线程安全的
+ */
+public class CompileClient implements Closeable {
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public CompileClient(Path socketPath) throws IOException {
+        channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+        in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * 服务端一次编译的输出, 与单独运行 Compiler 写出的文件相同
+     */
+    public static final class Response {
+        private final boolean aborted;
+        private final byte[] trace;
+        private final byte[] errors;
+
+        Response(boolean aborted, byte[] trace, byte[] errors) {
+            this.aborted = aborted;
+            this.trace = trace;
+            this.errors = errors;
+        }
+
+        /** 错误超过预算, 此时没有 parser.txt */
+        public boolean isAborted() { return aborted; }
+        /** parser.txt 的内容, 中止时为 null */
+        public byte[] getTrace() { return trace; }
+        /** error.txt 的内容, 没有错误时为 null */
+        public byte[] getErrors() { return errors; }
+    }
+
+    /**
+     * 由服务端读取 source 并编译. 相对路径按客户端的工作目录解析
+     */
+    public Response compile(Path source, CompileOptions options) throws IOException {
+        out.writeInt(CompileServer.PROTOCOL_VERSION);
+        out.writeByte(CompileServer.REQUEST_PATH);
+        out.writeUTF(source.toAbsolutePath().toString());
+        return send(options);
+    }
+
+    /**
+     * 编译客户端给出的源码 (默认字符集编码)
+     */
+    public Response compile(byte[] content, CompileOptions options) throws IOException {
+        out.writeInt(CompileServer.PROTOCOL_VERSION);
+        out.writeByte(CompileServer.REQUEST_CONTENT);
+        out.writeInt(content.length);
+        out.write(content);
+        return send(options);
+    }
+
+    /**
+     * 请服务端停止接受新连接并退出
+     */
+    public void shutdownServer() throws IOException {
+        out.writeInt(CompileServer.PROTOCOL_VERSION);
+        out.writeByte(CompileServer.REQUEST_SHUTDOWN);
+        out.flush();
+        in.readByte();
+    }
+
+    private Response send(CompileOptions options) throws IOException {
+        out.writeBoolean(options.isRecovery());
+        out.writeInt(options.getErrorLimit());
+        out.flush();
+
+        byte status = in.readByte();
+        if (status == CompileServer.STATUS_FAILED) {
+            throw new IOException("compile server: " + in.readUTF());
+        }
+        byte[] trace = readBlock();
+        byte[] errors = readBlock();
+        return new Response(status == CompileServer.STATUS_ABORTED, trace, errors);
+    }
+
+    private byte[] readBlock() throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] block = new byte[length];
+        in.readFully(block);
+        return block;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
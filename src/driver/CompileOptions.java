@@ -0,0 +1,32 @@
+package driver;
+
+/**
+ * 影响编译输出的选项. 单文件, 批量和缓存使用同一组选项, toString 的结果可以作为缓存键的一部分
+ */
+public final class CompileOptions {
+    public static final String RECOVERY_PROPERTY = "parser.recovery";
+    public static final String ERROR_LIMIT_PROPERTY = "parser.errorLimit";
+
+    private final boolean recovery;
+    private final int errorLimit;
+
+    public CompileOptions(boolean recovery, int errorLimit) {
+        this.recovery = recovery;
+        this.errorLimit = Math.max(errorLimit, 0);
+    }
+
+    /**
+     * -Dparser.recovery=true 开启恐慌模式恢复, -Dparser.errorLimit=N 设置错误预算
+     */
+    public static CompileOptions fromSystemProperties() {
+        return new CompileOptions(Boolean.getBoolean(RECOVERY_PROPERTY), Integer.getInteger(ERROR_LIMIT_PROPERTY, 0));
+    }
+
+    public boolean isRecovery() { return recovery; }
+    public int getErrorLimit() { return errorLimit; }
+
+    @Override
+    public String toString() {
+        return "recovery=" + recovery + ",errorLimit=" + errorLimit;
+    }
+}
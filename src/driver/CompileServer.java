@@ -0,0 +1,224 @@
+package driver;
+
+import error.ErrorHandler;
+import lexer.Lexer;
+import parser.ByteTraceSink;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 常驻编译服务: 在 Unix 域套接字上接受 CompileClient 的请求, 已经被 JIT 编译的 Lexer 和 Parser
+ * 以及每个工作线程的输出缓冲区在请求之间复用, 小文件不再承担 JVM 启动和解释执行的开销.
+ * 一个连接上可以依次发送多个请求, 连接由 jobs 个线程处理
+ */
+public class CompileServer {
+    /** 默认套接字文件, 位于临时目录, 按用户区分 */
+    public static final Path DEFAULT_SOCKET = Paths.get(System.getProperty("java.io.tmpdir"),
+            "compiler-" + System.getProperty("user.name", "user").replaceAll("[^A-Za-z0-9._-]", "_") + ".sock");
+
+    // 协议: 请求以版本号和类型开头, 内容和选项随后; 回复以状态开头, 长度为 -1 表示没有对应的文件
+    static final int PROTOCOL_VERSION = 1;
+    static final byte REQUEST_PATH = 0;
+    static final byte REQUEST_CONTENT = 1;
+    static final byte REQUEST_SHUTDOWN = 2;
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ABORTED = 1;
+    static final byte STATUS_FAILED = 2;
+
+    private static final int MAX_POOLED_BUFFER = 16 << 20;
+    // 请求中内联源码的长度上限, 超过时回复失败而不是按线上的长度分配
+    private static final int MAX_CONTENT_LENGTH = 256 << 20;
+
+    private final Path socketPath;
+    private final int jobs;
+    // 每个工作线程的输出缓冲区, 请求结束后 reset 复用
+    private final ThreadLocal<ByteArrayOutputStream> traceBuffers =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(1 << 16));
+    private final ThreadLocal<ByteArrayOutputStream> errorBuffers =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(1 << 10));
+    private volatile ServerSocketChannel server;
+
+    public CompileServer(Path socketPath, int jobs) {
+        this.socketPath = socketPath;
+        this.jobs = Math.max(jobs, 1);
+    }
+
+    /**
+     * 绑定套接字并处理请求, 直到收到关闭请求或调用 stop. 套接字文件已存在时先尝试连接:
+     * 有服务端应答则拒绝启动, 连不上才视为上次残留并删除
+     */
+    public void serve() throws IOException {
+        removeStaleSocket();
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.bind(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            // 另一个服务端抢先绑定了同一路径, 它的套接字文件不能删除
+            channel.close();
+            throw e;
+        }
+        server = channel;
+        ExecutorService workers = Executors.newFixedThreadPool(jobs, runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("compile-server-" + thread.getId());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (channel) {
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (AsynchronousCloseException e) {
+                    break;
+                }
+                workers.execute(() -> handle(client));
+            }
+        } finally {
+            workers.shutdownNow();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    private void removeStaleSocket() throws IOException {
+        if (!Files.exists(socketPath)) {
+            return;
+        }
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socketPath)).close();
+        } catch (ConnectException e) {
+            Files.deleteIfExists(socketPath);
+            return;
+        }
+        throw new IOException("compile server already running at " + socketPath);
+    }
+
+    /**
+     * 停止接受新连接, 正在处理的请求不再等待
+     */
+    public void stop() throws IOException {
+        ServerSocketChannel channel = server;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            while (true) {
+                int version;
+                try {
+                    version = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (version != PROTOCOL_VERSION) {
+                    writeFailure(out, "unsupported protocol version " + version);
+                    return;
+                }
+                byte kind = in.readByte();
+                if (kind == REQUEST_SHUTDOWN) {
+                    out.writeByte(STATUS_OK);
+                    out.flush();
+                    stop();
+                    return;
+                }
+                String path = null;
+                byte[] content = null;
+                if (kind == REQUEST_PATH) {
+                    path = in.readUTF();
+                } else if (kind == REQUEST_CONTENT) {
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_CONTENT_LENGTH) {
+                        // 内容没有读出, 连接上的后续数据无法解析
+                        writeFailure(out, "invalid content length " + length);
+                        return;
+                    }
+                    content = new byte[length];
+                    in.readFully(content);
+                } else {
+                    writeFailure(out, "unknown request " + kind);
+                    return;
+                }
+                CompileOptions options = new CompileOptions(in.readBoolean(), in.readInt());
+                CharBuffer source;
+                try {
+                    source = path != null ? Lexer.readSource(Paths.get(path))
+                            : Charset.defaultCharset().decode(ByteBuffer.wrap(content));
+                } catch (IOException e) {
+                    // 源文件无法读取时连接继续可用
+                    writeFailure(out, e.toString());
+                    continue;
+                }
+                compile(source, options, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // 客户端断开, 只影响这一个连接
+        }
+    }
+
+    private void compile(CharBuffer source, CompileOptions options, DataOutputStream out) throws IOException {
+        ByteArrayOutputStream trace = traceBuffers.get();
+        ByteArrayOutputStream errors = errorBuffers.get();
+        trace.reset();
+        errors.reset();
+        ErrorHandler errorHandler = new ErrorHandler();
+        boolean aborted;
+        try (ByteTraceSink sink = new ByteTraceSink(trace)) {
+            aborted = !new SourceCompiler(options).compile(source, errorHandler, sink);
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            writeFailure(out, e.toString());
+            return;
+        }
+        if (errorHandler.hasErrors()) {
+            errorHandler.writeErrors(errors);
+        }
+
+        out.writeByte(aborted ? STATUS_ABORTED : STATUS_OK);
+        writeBlock(out, aborted ? null : trace);
+        writeBlock(out, errorHandler.hasErrors() ? errors : null);
+        // 个别大文件撑大的缓冲区不长期留在线程上
+        if (trace.size() > MAX_POOLED_BUFFER) {
+            traceBuffers.remove();
+        }
+    }
+
+    private static void writeBlock(DataOutputStream out, ByteArrayOutputStream block) throws IOException {
+        if (block == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(block.size());
+        block.writeTo(out);
+    }
+
+    private static void writeFailure(DataOutputStream out, String message) throws IOException {
+        out.writeByte(STATUS_FAILED);
+        out.writeUTF(message);
+        out.flush();
+    }
+}
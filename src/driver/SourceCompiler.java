@@ -0,0 +1,80 @@
+package driver;
+
+import error.ErrorHandler;
+import lexer.Lexer;
+import lexer.LookaheadTokenStream;
+import lexer.ParallelLexer;
+import lexer.TokenBuffer;
+import parser.ParseAbortedException;
+import parser.ParseEventSink;
+import parser.Parser;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 编译一个源文件的全部状态都在一次 compile 调用内创建, 多个线程可以共用同一个 SourceCompiler.
+ * 单文件的 Compiler 和批量驱动都经过这里, 输出完全相同
+ */
+public class SourceCompiler {
+    // 输出格式或内容有变化时修改, 使编译缓存中的旧条目失效
+    public static final String VERSION = "1";
+    // 超过该长度的源文件先并行分块完成词法分析
+    public static final long PARALLEL_LEX_THRESHOLD = 4L << 20;
+    /** -Dparser.parallelFunctions=true 时大文件的各个函数并行解析, 不影响输出 */
+    public static final String PARALLEL_FUNCTIONS_PROPERTY = "parser.parallelFunctions";
+
+    private final CompileOptions options;
+    private final boolean parallelFunctions;
+
+    public SourceCompiler(CompileOptions options) {
+        this(options, Boolean.getBoolean(PARALLEL_FUNCTIONS_PROPERTY));
+    }
+
+    public SourceCompiler(CompileOptions options, boolean parallelFunctions) {
+        this.options = options;
+        this.parallelFunctions = parallelFunctions;
+    }
+
+    public CompileOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * 编译 source, parser.txt 的内容写入 sink, 错误报告给 errorHandler (不排序, 不写文件).
+     * 错误超过预算时返回 false, 此时 sink 中只有部分输出
+     */
+    public boolean compile(CharBuffer source, ErrorHandler errorHandler, ParseEventSink sink) {
+        Lexer lexer = new Lexer(errorHandler);
+        Parser parser;
+        ForkJoinPool functionPool = null;
+        if (source.remaining() >= PARALLEL_LEX_THRESHOLD) {
+            TokenBuffer tokens = new ParallelLexer(errorHandler, lexer.getSymbolPool()).tokenize(source);
+            parser = new Parser(tokens, errorHandler, sink);
+            if (parallelFunctions) {
+                // 各个函数在本次编译专用的线程池上并行解析, 按源码顺序合并输出
+                functionPool = new ForkJoinPool();
+                parser.setFunctionPool(functionPool);
+            }
+        } else {
+            // 词法分析与语法分析交替进行, 不再先生成完整的单词序列; 单词只保留向前查看的窗口, 不建语法树
+            lexer.reset(source);
+            parser = new Parser(new LookaheadTokenStream(lexer, false), errorHandler, sink);
+        }
+        // 机器生成的深层嵌套代码也不会栈溢出, 输出与递归下降相同
+        parser.setExplicitStack(true);
+        parser.setRecovery(options.isRecovery());
+        parser.setErrorLimit(options.getErrorLimit());
+        try {
+            parser.parse();
+        } catch (ParseAbortedException e) {
+            return false;
+        } finally {
+            // parse 返回前已等待全部任务结束
+            if (functionPool != null) {
+                functionPool.shutdown();
+            }
+        }
+        return true;
+    }
+}
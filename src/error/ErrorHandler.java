@@ -1,58 +1,305 @@
 package error;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 错误列表, 以并列的基本类型数组保存: 行号, 错误码编号, 以及可选的源码字符偏移 (未知时为 -1).
+ * 错误码在全局表中编号, 不同 ErrorHandler 之间可以直接合并; 输出格式仍为每行 "行号 错误码"
+ */
 public class ErrorHandler {
-    private final List<String> errorMessages = new ArrayList<>();
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    // 全部 ErrorHandler 共用的错误码编号, 一个字节足够
+    private static final Map<String, Integer> CODE_IDS = new ConcurrentHashMap<>();
+    private static volatile String[] codeNames = new String[0];
+
+    private int[] lines = new int[DEFAULT_CAPACITY];
+    private byte[] codes = new byte[DEFAULT_CAPACITY];
+    private int[] offsets = new int[DEFAULT_CAPACITY];
+    private int size = 0;
+    // 开启后同一行的同一错误码只保留第一次报告
+    private boolean deduplicate = false;
+    private LongHashSet reported;
 
     public void reportError(int lineNumber, String errorCode) {
-        errorMessages.add(lineNumber + " " + errorCode);
+        reportError(lineNumber, errorCode, -1);
+    }
+
+    /**
+     * offset 为出错单词在源码中的字符偏移, 只用于工具查询, 不写入 error.txt
+     */
+    public void reportError(int lineNumber, String errorCode, int offset) {
+        add(lineNumber, codeId(errorCode), offset);
+    }
+
+    private void add(int lineNumber, int code, int offset) {
+        if (deduplicate && !reported.add(key(lineNumber, code))) {
+            return;
+        }
+        if (size == lines.length) {
+            int capacity = size * 2;
+            lines = Arrays.copyOf(lines, capacity);
+            codes = Arrays.copyOf(codes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        lines[size] = lineNumber;
+        codes[size] = (byte) code;
+        offsets[size] = offset;
+        size++;
+    }
+
+    /**
+     * 按原顺序追加 other 中的全部错误
+     */
+    public void addAll(ErrorHandler other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.lines[i], other.codes[i] & 0xFF, other.offsets[i]);
+        }
+    }
+
+    /**
+     * 开启后同一行的同一错误码只保留第一次报告, 已有的重复错误也一并去掉
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        if (deduplicate && !this.deduplicate) {
+            reported = new LongHashSet();
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (reported.add(key(lines[i], codes[i] & 0xFF))) {
+                    lines[kept] = lines[i];
+                    codes[kept] = codes[i];
+                    offsets[kept] = offsets[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        } else if (!deduplicate) {
+            reported = null;
+        }
+        this.deduplicate = deduplicate;
     }
 
+    public int getErrorCount() { return size; }
+    public int getLineNumber(int index) { return lines[checkIndex(index)]; }
+    public String getErrorCode(int index) { return codeNames[codes[checkIndex(index)] & 0xFF]; }
+    public int getOffset(int index) { return offsets[checkIndex(index)]; }
+
+    /**
+     * 逐字节写出 "行号 错误码" 行 (默认字符集, 系统行分隔符), 不为每行拼接字符串
+     */
     public void writeErrorsToFile(String filename) throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
-        for (String error : errorMessages) {
-            writer.write(error);
-            writer.newLine();
+        try (OutputStream out = new FileOutputStream(filename)) {
+            writeErrors(out);
+        }
+    }
+
+    /**
+     * 与 writeErrorsToFile 相同的内容写到 out, 各行先编码到本地缓冲区再整块写出
+     */
+    public void writeErrors(OutputStream out) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        byte[] separator = System.lineSeparator().getBytes(charset);
+        String[] names = codeNames;
+        byte[][] encodedCodes = new byte[names.length][];
+        byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int code = codes[i] & 0xFF;
+            if (encodedCodes[code] == null) {
+                encodedCodes[code] = names[code].getBytes(charset);
+            }
+            byte[] encodedCode = encodedCodes[code];
+            // 符号和十位数字, 空格, 错误码, 行分隔符
+            int lineLength = 12 + encodedCode.length + separator.length;
+            if (count + lineLength > buffer.length) {
+                out.write(buffer, 0, count);
+                count = 0;
+                if (lineLength > buffer.length) {
+                    buffer = new byte[lineLength];
+                }
+            }
+            long line = lines[i];
+            if (line < 0) {
+                buffer[count++] = '-';
+                line = -line;
+            }
+            int digits = 1;
+            for (long rest = line / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            for (int pos = count + digits - 1; pos >= count; pos--) {
+                buffer[pos] = (byte) ('0' + line % 10);
+                line /= 10;
+            }
+            count += digits;
+            buffer[count++] = ' ';
+            System.arraycopy(encodedCode, 0, buffer, count, encodedCode.length);
+            count += encodedCode.length;
+            System.arraycopy(separator, 0, buffer, count, separator.length);
+            count += separator.length;
         }
-        writer.close();
+        out.write(buffer, 0, count);
+        out.flush();
     }
 
     public boolean hasErrors() {
-        return !errorMessages.isEmpty();
+        return size > 0;
     }
 
+    /**
+     * 按行号稳定排序: 对下标做 16 位的基数排序, 不比较也不分配字符串, 行号相同时保持报告顺序
+     */
     public void sortErrorsByLineNumber() {
-        errorMessages.sort(new ErrorLineComparator());
+        int[] order = identity();
+        order = radixSort(order, lines);
+        permute(order);
     }
 
-    private static class ErrorLineComparator implements Comparator<String> {
-        @Override
-        public int compare(String error1, String error2) {
-            // 提取行号并比较
-            int lineNumber1 = extractLineNumber(error1);
-            int lineNumber2 = extractLineNumber(error2);
-            return Integer.compare(lineNumber1, lineNumber2);
+    private int[] identity() {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    /**
+     * 按 keys[order[i]] 稳定排序 order, 返回排好的数组; 关键字都在 [0, 65536) 内时只需一趟,
+     * 否则加上偏置做两趟, 负数排在前面
+     */
+    private int[] radixSort(int[] order, int[] keys) {
+        boolean wide = false;
+        for (int i = 0; i < size; i++) {
+            wide |= (keys[i] & 0xFFFF0000) != 0;
+        }
+        int bias = wide ? Integer.MIN_VALUE : 0;
+        int[] scratch = new int[size];
+        int[] counts = new int[(1 << 16) + 1];
+        for (int shift = 0; shift <= (wide ? 16 : 0); shift += 16) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[(((keys[i] ^ bias) >>> shift) & 0xFFFF) + 1]++;
+            }
+            for (int d = 0; d < 1 << 16; d++) {
+                counts[d + 1] += counts[d];
+            }
+            for (int i = 0; i < size; i++) {
+                int from = order[i];
+                scratch[counts[((keys[from] ^ bias) >>> shift) & 0xFFFF]++] = from;
+            }
+            int[] swap = order;
+            order = scratch;
+            scratch = swap;
+        }
+        return order;
+    }
+
+    private void permute(int[] order) {
+        int[] sortedLines = new int[lines.length];
+        byte[] sortedCodes = new byte[codes.length];
+        int[] sortedOffsets = new int[offsets.length];
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            sortedLines[i] = lines[from];
+            sortedCodes[i] = codes[from];
+            sortedOffsets[i] = offsets[from];
+        }
+        lines = sortedLines;
+        codes = sortedCodes;
+        offsets = sortedOffsets;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Error " + index + " out of bounds for size " + size);
+        }
+        return index;
+    }
+
+    private static long key(int lineNumber, int code) {
+        return ((long) lineNumber << 8) | code;
+    }
+
+    private static int codeId(String errorCode) {
+        Integer id = CODE_IDS.get(errorCode);
+        return id != null ? id : register(errorCode);
+    }
+
+    private static synchronized int register(String errorCode) {
+        Integer id = CODE_IDS.get(errorCode);
+        if (id != null) {
+            return id;
+        }
+        String[] names = codeNames;
+        if (names.length == 256) {
+            throw new IllegalStateException("Too many distinct error codes");
+        }
+        String[] grown = Arrays.copyOf(names, names.length + 1);
+        grown[names.length] = errorCode;
+        // 先发布名字表再发布编号, 拿到编号的线程一定能查到名字
+        codeNames = grown;
+        CODE_IDS.put(errorCode, names.length);
+        return names.length;
+    }
+
+    /**
+     * 只支持 add 的 long 开放寻址集合, 用于去重
+     */
+    private static class LongHashSet {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] slots = new long[64];
+        private int count = 0;
+
+        LongHashSet() {
+            Arrays.fill(slots, EMPTY);
         }
 
         /**
-         * 从错误信息中提取行号
-         * 错误信息格式为: "行号 错误代码"
+         * 加入 value, 已经存在时返回 false
          */
-        private int extractLineNumber(String error) {
-            try {
-                // 提取第一个空格前的数字
-                String lineNumberStr = error.split(" ")[0];
-                return Integer.parseInt(lineNumberStr);
-            } catch (Exception e) {
-                // 如果解析失败，返回一个很大的值，让这些错误排在后面
-                return Integer.MAX_VALUE;
+        boolean add(long value) {
+            if ((count + 1) * 2 > slots.length) {
+                rehash();
             }
+            int mask = slots.length - 1;
+            int index = hash(value) & mask;
+            while (slots[index] != EMPTY) {
+                if (slots[index] == value) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            slots[index] = value;
+            count++;
+            return true;
+        }
+
+        private void rehash() {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            Arrays.fill(slots, EMPTY);
+            int mask = slots.length - 1;
+            for (long value : old) {
+                if (value != EMPTY) {
+                    int index = hash(value) & mask;
+                    while (slots[index] != EMPTY) {
+                        index = (index + 1) & mask;
+                    }
+                    slots[index] = value;
+                }
+            }
+        }
+
+        private static int hash(long value) {
+            long h = value * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
         }
     }
 }
@@ -0,0 +1,191 @@
+package lexer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 源文本的按字批量扫描 (SWAR): 源文本按 ISO-8859-1 转为字节数组, 每次读取 8 个字节作为一个 long,
+ * 用按字节精确的相等掩码一次检查 8 个字符, 用于跳过空白, 查找注释结束符和字符串引号.
+ * 无法编码的字符变为 '?', 和其他非 ASCII 字符一样不会被误认为空白, 引号或注释符号.
+ * 行号统计与 Lexer 的标量路径一致, 跨过的换行数累计在 newlines 中, 由 takeNewlines 取走
+ */
+final class AsciiScanner {
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+    private static final long SPACE = ' ' * ONES;
+    private static final long TAB = '\t' * ONES;
+    private static final long LF = '\n' * ONES;
+    private static final long CR = '\r' * ONES;
+    private static final long STAR = '*' * ONES;
+    private static final long QUOTE = '"' * ONES;
+
+    private final byte[] bytes;
+    // 没有 \r 时换行数就是 \n 的个数, 可以直接按字统计
+    private final boolean hasCarriageReturn;
+    private int newlines = 0;
+
+    private AsciiScanner(byte[] bytes, boolean hasCarriageReturn) {
+        this.bytes = bytes;
+        this.hasCarriageReturn = hasCarriageReturn;
+    }
+
+    /**
+     * 将 text 复制为字节数组, 下标与 text 中的字符一一对应
+     */
+    static AsciiScanner of(CharSequence text) {
+        String string = text.toString();
+        return new AsciiScanner(string.getBytes(StandardCharsets.ISO_8859_1), string.indexOf('\r') >= 0);
+    }
+
+    /**
+     * 返回并清零上次扫描跨过的换行数
+     */
+    int takeNewlines() {
+        int count = newlines;
+        newlines = 0;
+        return count;
+    }
+
+    /**
+     * 跳过 [from, to) 开头由空格, 制表符和 \n 组成的连续空白, 返回第一个其他字符的位置.
+     * \r 及其他空白字符交给标量路径处理, 以保持 \r\n 的行号统计规则
+     */
+    int skipWhitespace(int from, int to) {
+        int i = from;
+        int lines = 0;
+        while (i + Long.BYTES <= to) {
+            long word = (long) LONG.get(bytes, i);
+            // 缩进中最常见的是 8 个空格
+            if (word == SPACE) {
+                i += Long.BYTES;
+                continue;
+            }
+            long lf = equalMask(word, LF);
+            long other = ~(equalMask(word, SPACE) | equalMask(word, TAB) | lf) & ~LOW7;
+            if (other != 0) {
+                int run = Long.numberOfTrailingZeros(other) >>> 3;
+                newlines += lines + Long.bitCount(lf & lowBytes(run));
+                return i + run;
+            }
+            lines += Long.bitCount(lf);
+            i += Long.BYTES;
+        }
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b == '\n') {
+                lines++;
+            } else if (b != ' ' && b != '\t') {
+                break;
+            }
+        }
+        newlines += lines;
+        return i;
+    }
+
+    /**
+     * 查找 [from, to) 中第一个完整的注释结束符 * / 的位置, 找不到时返回 to
+     */
+    int findCommentEnd(int from, int to) {
+        int i = from;
+        while (i + Long.BYTES <= to) {
+            long word = (long) LONG.get(bytes, i);
+            long stars = equalMask(word, STAR);
+            while (stars != 0) {
+                int k = Long.numberOfTrailingZeros(stars) >>> 3;
+                if (i + k + 1 < to && bytes[i + k + 1] == '/') {
+                    countLineEnds(word, i, k, to);
+                    return i + k;
+                }
+                stars &= stars - 1;
+            }
+            countLineEnds(word, i, Long.BYTES, to);
+            i += Long.BYTES;
+        }
+        for (; i < to; i++) {
+            byte b = bytes[i];
+            if (b == '*' && i + 1 < to && bytes[i + 1] == '/') {
+                return i;
+            }
+            if (isLineEnd(i, to)) {
+                newlines++;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * 查找 [from, to) 中第一个换行符的位置, 用于单行注释, 找不到时返回 to
+     */
+    int findLineEnd(int from, int to) {
+        return indexOf(from, to, LF, CR, CR);
+    }
+
+    /**
+     * 查找 [from, to) 中第一个双引号或换行符的位置, 用于字符串, 找不到时返回 to
+     */
+    int findQuoteOrLineEnd(int from, int to) {
+        return indexOf(from, to, QUOTE, LF, CR);
+    }
+
+    private int indexOf(int from, int to, long a, long b, long c) {
+        int i = from;
+        while (i + Long.BYTES <= to) {
+            long word = (long) LONG.get(bytes, i);
+            long found = equalMask(word, a) | equalMask(word, b) | equalMask(word, c);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+            i += Long.BYTES;
+        }
+        byte x = (byte) a;
+        byte y = (byte) b;
+        byte z = (byte) c;
+        for (; i < to; i++) {
+            byte v = bytes[i];
+            if (v == x || v == y || v == z) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * 统计 word 前 count 个字节中的行结束符, 规则与 Lexer 相同: \n, 单独的 \r 和 \r\n 各算一行
+     */
+    private void countLineEnds(long word, int at, int count, int to) {
+        long mask = lowBytes(count);
+        if (!hasCarriageReturn || (equalMask(word, CR) & mask) == 0) {
+            newlines += Long.bitCount(equalMask(word, LF) & mask);
+            return;
+        }
+        for (int i = at; i < at + count; i++) {
+            if (isLineEnd(i, to)) {
+                newlines++;
+            }
+        }
+    }
+
+    private boolean isLineEnd(int i, int to) {
+        byte b = bytes[i];
+        return b == '\n' || (b == '\r' && (i + 1 >= to || bytes[i + 1] != '\n'));
+    }
+
+    /**
+     * 与 pattern 相等的字节最高位为 1, 其余位为 0; 不借位, 因此没有误判
+     */
+    private static long equalMask(long word, long pattern) {
+        long x = word ^ pattern;
+        return ~(((x & LOW7) + LOW7) | x | LOW7);
+    }
+
+    /**
+     * 低 count 个字节全为 1 的掩码
+     */
+    private static long lowBytes(int count) {
+        return count >= Long.BYTES ? -1L : (1L << (count << 3)) - 1;
+    }
+}
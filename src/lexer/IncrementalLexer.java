@@ -0,0 +1,87 @@
+package lexer;
+
+import error.ErrorHandler;
+
+/**
+ * 编辑后的增量词法分析.
+ * 编辑位置之前的单词原样保留, 从编辑前最后一个单词的起点重新扫描;
+ * 单词起点处的扫描状态总是干净的 (不在注释中), 所以越过编辑区域后,
+ * 一旦新单词的起点与某个旧单词平移后的起点重合, 后续单词必然与旧序列一致,
+ * 此时直接复制旧单词并平移偏移量和行号即可
+ */
+public class IncrementalLexer {
+    private final ErrorHandler errorHandler;
+
+    public IncrementalLexer(ErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * 对 previous 的源文本应用 edit 并返回新的单词序列
+     */
+    public TokenBuffer relex(TokenBuffer previous, TextEdit edit) {
+        return relex(previous, edit.applyTo(previous.getSource()), edit);
+    }
+
+    /**
+     * newSource 必须是 previous 的源文本应用 edit 之后的结果
+     */
+    public TokenBuffer relex(TokenBuffer previous, CharSequence newSource, TextEdit edit) {
+        int editStart = edit.getOffset();
+        int oldEditEnd = editStart + edit.getRemovedLength();
+        int newEditEnd = editStart + edit.getInsertedText().length();
+        int delta = edit.getDelta();
+
+        // 重新扫描的起点: 起点严格位于编辑位置之前的最后一个单词
+        int restart = lastTokenBefore(previous, editStart);
+        int restartOffset = restart >= 0 ? previous.getStart(restart) : 0;
+        int restartLine = restart >= 0 ? previous.getLineNumber(restart) : 1;
+
+        // 沿用原序列的 SymbolPool, 保证复制过来的符号编号与新扫描的一致
+        SymbolPool symbolPool = previous.getSymbolPool() != null ? previous.getSymbolPool() : new SymbolPool();
+        Lexer lexer = new Lexer(errorHandler, symbolPool);
+        TokenBuffer result = new TokenBuffer(newSource, symbolPool, previous.size() + 16);
+        result.addRange(previous, 0, Math.max(restart, 0), 0, 0);
+
+        // 编辑区域之后的第一个旧单词, 用于判断新旧序列是否重新对齐
+        int oldIndex = Math.max(restart, 0);
+        while (oldIndex < previous.size() && previous.getStart(oldIndex) < oldEditEnd) {
+            oldIndex++;
+        }
+
+        lexer.beginRange(newSource, restartOffset, newSource.length(), false, restartLine);
+        while (lexer.scanInto(result)) {
+            int last = result.size() - 1;
+            int start = result.getStart(last);
+            if (start < newEditEnd) {
+                continue;
+            }
+            while (oldIndex < previous.size() && previous.getStart(oldIndex) + delta < start) {
+                oldIndex++;
+            }
+            if (oldIndex < previous.size() && previous.getStart(oldIndex) + delta == start) {
+                int lineDelta = result.getLineNumber(last) - previous.getLineNumber(oldIndex);
+                result.removeLast();
+                result.addRange(previous, oldIndex, previous.size(), delta, lineDelta);
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static int lastTokenBefore(TokenBuffer tokens, int offset) {
+        int low = 0;
+        int high = tokens.size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.getStart(middle) < offset) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+}
@@ -1,5 +1,6 @@
 package lexer;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -54,4 +55,11 @@ public class Keyword {
     public static boolean isKeyword(String str) {
         return keywordMap.containsKey(str);
     }
-}
\ No newline at end of file
+
+    /**
+     * 关键字与运算符表, 供 KeywordRecognizer 生成状态转移表
+     */
+    static Map<String, TokenType> entries() {
+        return Collections.unmodifiableMap(keywordMap);
+    }
+}
@@ -0,0 +1,94 @@
+package lexer;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 由 Keyword 表生成的确定有限自动机 (字典树), 类加载时构建一次.
+ * 直接在源文本上逐字符转移, 一次遍历即可识别关键字和单双字符运算符,
+ * 识别过程不创建字符串, 也不需要先 isKeyword 再 getTokenType 两次查表
+ */
+public final class KeywordRecognizer {
+    private static final int DEAD = 0;
+    private static final int ROOT = 1;
+
+    // 将表中出现过的 ASCII 字符压缩为连续的列号, 0 表示不会出现在任何关键字中
+    private static final byte[] columns = new byte[128];
+    private static final int columnCount;
+    private static final int[] transitions;
+    private static final TokenType[] accepts;
+
+    static {
+        Map<String, TokenType> entries = Keyword.entries();
+        int nextColumn = 1;
+        int stateLimit = 2;
+        for (String word : entries.keySet()) {
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (columns[c] == 0) {
+                    columns[c] = (byte) nextColumn++;
+                }
+            }
+            stateLimit += word.length();
+        }
+        columnCount = nextColumn;
+
+        int[] table = new int[stateLimit * columnCount];
+        TokenType[] acceptTable = new TokenType[stateLimit];
+        int stateCount = 2;
+        for (Map.Entry<String, TokenType> entry : entries.entrySet()) {
+            String word = entry.getKey();
+            int state = ROOT;
+            for (int i = 0; i < word.length(); i++) {
+                int slot = state * columnCount + columns[word.charAt(i)];
+                if (table[slot] == DEAD) {
+                    table[slot] = stateCount++;
+                }
+                state = table[slot];
+            }
+            acceptTable[state] = entry.getValue();
+        }
+        transitions = Arrays.copyOf(table, stateCount * columnCount);
+        accepts = Arrays.copyOf(acceptTable, stateCount);
+    }
+
+    private KeywordRecognizer() {
+    }
+
+    /**
+     * 识别 text[start, start + length) 是否恰好是一个关键字或运算符,
+     * 是则返回对应的 TokenType, 否则返回 null
+     */
+    public static TokenType match(CharSequence text, int start, int length) {
+        int state = ROOT;
+        for (int i = start, end = start + length; i < end; i++) {
+            state = step(state, text.charAt(i));
+            if (state == DEAD) {
+                return null;
+            }
+        }
+        return accepts[state];
+    }
+
+    /**
+     * 识别单字符运算符, 不是运算符时返回 null
+     */
+    public static TokenType match(char c) {
+        return accepts[step(ROOT, c)];
+    }
+
+    /**
+     * 识别由 first 和 second 组成的双字符运算符, 不是运算符时返回 null
+     */
+    public static TokenType match(char first, char second) {
+        int state = step(ROOT, first);
+        return state == DEAD ? null : accepts[step(state, second)];
+    }
+
+    private static int step(int state, char c) {
+        if (c >= 128 || columns[c] == 0) {
+            return DEAD;
+        }
+        return transitions[state * columnCount + columns[c]];
+    }
+}
@@ -3,6 +3,12 @@ package lexer;
 import error.ErrorHandler;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,10 +17,43 @@ public class Lexer {
     private int currentCharIndex = 0;
     private String currentLine = "";
     private char currentChar = '\0';
+    private CharSequence source;
+    private int position = 0;
+    private int limit = 0;
+    private boolean inComment = false;
+    private TokenType tokenType;
+    private int tokenStart;
+    private int tokenLength;
+    private int tokenLine;
+    private int tokenPayload;
+    private byte tokenFlags;
+    private boolean fastScan = false;
+    private AsciiScanner ascii;
     private final ErrorHandler errorHandler;
+    private final SymbolPool symbolPool;
 
     public Lexer(ErrorHandler errorHandler) {
+        this(errorHandler, new SymbolPool());
+    }
+
+    /**
+     * 多个 Lexer 共享同一个 SymbolPool 时, 整个编译过程中同名标识符的编号一致
+     */
+    public Lexer(ErrorHandler errorHandler, SymbolPool symbolPool) {
         this.errorHandler = errorHandler;
+        this.symbolPool = symbolPool;
+    }
+
+    public SymbolPool getSymbolPool() {
+        return symbolPool;
+    }
+
+    /**
+     * 开启后, 缓冲区和拉取模式按 8 字节一组跳过连续空白和注释, 查找字符串结尾;
+     * 关闭时以及 ParallelLexer 和 IncrementalLexer 的分段扫描仍使用逐字符的标量路径
+     */
+    public void setFastScan(boolean fastScan) {
+        this.fastScan = fastScan;
     }
 
     public List<Token> tokenize(BufferedReader reader) throws IOException {
@@ -88,8 +127,11 @@ public class Lexer {
         }
 
         String identifier = sb.toString();
-        TokenType type = Keyword.isKeyword(identifier) ?
-                Keyword.getTokenType(identifier) : TokenType.IDENFR;
+        TokenType type = KeywordRecognizer.match(identifier, 0, identifier.length());
+        if (type == null) {
+            int symbolId = symbolPool.intern(identifier);
+            return new Token(TokenType.IDENFR, symbolPool.getName(symbolId), lineNumber, symbolId);
+        }
 
         return new Token(type, identifier, lineNumber);
     }
@@ -97,19 +139,26 @@ public class Lexer {
     private Token processNumber() {
         StringBuilder sb = new StringBuilder();
         sb.append(currentChar);
+        int value = Character.digit(currentChar, 10);
+        boolean overflow = false;
         currentCharIndex++;
 
         while (currentCharIndex < currentLine.length()) {
             currentChar = currentLine.charAt(currentCharIndex);
             if (Character.isDigit(currentChar)) {
                 sb.append(currentChar);
+                int digit = Character.digit(currentChar, 10);
+                overflow |= isOverflow(value, digit);
+                value = value * 10 + digit;
                 currentCharIndex++;
             } else {
                 break;
             }
         }
 
-        return new Token(TokenType.INTCON, sb.toString(), lineNumber);
+        Token token = new Token(TokenType.INTCON, sb.toString(), lineNumber);
+        token.setIntValue(value, overflow);
+        return token;
     }
 
     private Token processString() {
@@ -133,9 +182,10 @@ public class Lexer {
     private Token processOperator() {
         // 检查双字符运算符
         if (currentCharIndex + 1 < currentLine.length()) {
-            String twoCharOp = currentLine.substring(currentCharIndex, currentCharIndex + 2);
-            if (Keyword.isKeyword(twoCharOp)) {
-                Token token = new Token(Keyword.getTokenType(twoCharOp), twoCharOp, lineNumber);
+            TokenType twoCharType = KeywordRecognizer.match(currentChar, currentLine.charAt(currentCharIndex + 1));
+            if (twoCharType != null) {
+                String twoCharOp = currentLine.substring(currentCharIndex, currentCharIndex + 2);
+                Token token = new Token(twoCharType, twoCharOp, lineNumber);
                 currentCharIndex += 2;
                 return token;
             }
@@ -143,8 +193,9 @@ public class Lexer {
 
         // 检查单字符运算符
         String singleCharOp = Character.toString(currentChar);
-        if (Keyword.isKeyword(singleCharOp)) {
-            Token token = new Token(Keyword.getTokenType(singleCharOp), singleCharOp, lineNumber);
+        TokenType singleCharType = KeywordRecognizer.match(currentChar);
+        if (singleCharType != null) {
+            Token token = new Token(singleCharType, singleCharOp, lineNumber);
             currentCharIndex++;
             return token;
         } else {
@@ -180,4 +231,343 @@ public class Lexer {
             }
         }
     }
+
+    /**
+     * 缓冲区扫描模式: 将文件映射到内存并一次性解码,
+     * 词法单元只记录在缓冲区中的偏移量和长度
+     */
+    public List<Token> tokenize(Path path) throws IOException {
+        return tokenizeToBuffer(path).asList();
+    }
+
+    public List<Token> tokenize(CharBuffer buffer) {
+        return tokenizeToBuffer(buffer).asList();
+    }
+
+    public TokenBuffer tokenizeToBuffer(Path path) throws IOException {
+        return tokenizeToBuffer(readSource(path));
+    }
+
+    public TokenBuffer tokenizeToBuffer(CharBuffer buffer) {
+        reset(buffer);
+        // 按平均每 4 个字符一个单词预估容量
+        TokenBuffer tokens = new TokenBuffer(source, symbolPool, source.length() / 4);
+        while (scanInto(tokens)) {
+            // 逐个追加直到输入结束
+        }
+        return tokens;
+    }
+
+    /**
+     * 拉取模式: open/reset 之后由 nextToken 按需逐个产生词法单元,
+     * 供 LookaheadTokenStream 与语法分析交替进行
+     */
+    public void open(Path path) throws IOException {
+        reset(readSource(path));
+    }
+
+    public void reset(CharBuffer buffer) {
+        source = buffer.slice();
+        position = 0;
+        limit = source.length();
+        inComment = false;
+        ascii = fastScan ? AsciiScanner.of(source) : null;
+    }
+
+    /**
+     * 只扫描 source[from, to), 供 ParallelLexer 分块使用.
+     * 行号从 1 开始计数, startsInComment 表示该范围开头位于多行注释内部
+     */
+    TokenBuffer tokenizeRange(CharSequence text, int from, int to, boolean startsInComment) {
+        beginRange(text, from, to, startsInComment, 1);
+        TokenBuffer tokens = new TokenBuffer(source, symbolPool, (to - from) / 4);
+        while (scanInto(tokens)) {
+            // 逐个追加直到范围结束
+        }
+        return tokens;
+    }
+
+    /**
+     * 从 text 的 from 处以给定行号和注释状态开始扫描, 之后用 scanInto 逐个取单词
+     */
+    void beginRange(CharSequence text, int from, int to, boolean startsInComment, int line) {
+        source = text;
+        position = from;
+        limit = to;
+        inComment = startsInComment;
+        lineNumber = line;
+        ascii = null;
+    }
+
+    /**
+     * 扫描下一个单词并追加到 tokens, 没有更多单词时返回 false
+     */
+    boolean scanInto(TokenBuffer tokens) {
+        if (!advance()) {
+            return false;
+        }
+        tokens.add(tokenType, tokenStart, tokenLength, tokenLine, tokenPayload, tokenFlags);
+        return true;
+    }
+
+    /**
+     * 上一次扫描结束时是否仍处于未闭合的多行注释中
+     */
+    boolean endsInComment() {
+        return inComment;
+    }
+
+    CharSequence getSource() {
+        return source;
+    }
+
+    /**
+     * 当前行号, 扫描结束后即为已经过的换行数加 1
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * 返回下一个词法单元, 到达输入末尾时返回 null
+     */
+    public Token nextToken() {
+        if (!advance()) {
+            return null;
+        }
+        if (tokenType == TokenType.IDENFR) {
+            return new Token(tokenType, source, tokenStart, tokenLength, tokenLine,
+                    tokenPayload, symbolPool.getName(tokenPayload));
+        }
+        Token token = new Token(tokenType, source, tokenStart, tokenLength, tokenLine);
+        if (tokenType == TokenType.INTCON) {
+            token.setIntValue(tokenPayload, (tokenFlags & TokenBuffer.FLAG_OVERFLOW) != 0);
+        }
+        return token;
+    }
+
+    /**
+     * 以默认字符集读入整个源文件, 与 open 和 tokenize(Path) 读入的内容相同
+     */
+    public static CharBuffer readSource(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return Charset.defaultCharset().decode(bytes);
+        }
+    }
+
+    /**
+     * 扫描下一个词法单元并记录到 tokenType/tokenStart/tokenLength/tokenLine,
+     * 没有更多单词时返回 false
+     */
+    private boolean advance() {
+        int end = limit;
+        if (inComment) {
+            skipCommentBody();
+        }
+
+        while (position < end) {
+            char c = source.charAt(position);
+
+            // 跳过空白字符, 同时按 \n, \r, \r\n 统计行号
+            if (Character.isWhitespace(c)) {
+                // 单个空白直接走标量路径, 连续空白才按字批量跳过
+                if (ascii != null && position + 1 < end && Character.isWhitespace(source.charAt(position + 1))) {
+                    int next = ascii.skipWhitespace(position, end);
+                    if (next > position) {
+                        position = next;
+                        lineNumber += ascii.takeNewlines();
+                        continue;
+                    }
+                }
+                if (c == '\n' || (c == '\r' && (position + 1 >= end || source.charAt(position + 1) != '\n'))) {
+                    lineNumber++;
+                }
+                position++;
+                continue;
+            }
+
+            // 处理标识符或关键字
+            if (Character.isLetter(c) || c == '_') {
+                scanIdentifier();
+            }
+            // 处理数字
+            else if (Character.isDigit(c)) {
+                scanNumber();
+            }
+            // 处理字符串
+            else if (c == '"') {
+                scanString();
+            }
+            // 处理注释
+            else if (c == '/' && position + 1 < end && source.charAt(position + 1) == '/') {
+                skipSingleLineComment();
+                continue;
+            } else if (c == '/' && position + 1 < end && source.charAt(position + 1) == '*') {
+                skipMultiLineComment();
+                continue;
+            }
+            // 处理运算符和分隔符
+            else {
+                scanOperator();
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private void emit(TokenType type, int start, int length) {
+        tokenType = type;
+        tokenStart = start;
+        tokenLength = length;
+        tokenLine = lineNumber;
+        tokenPayload = -1;
+        tokenFlags = 0;
+    }
+
+    private static boolean isLineEnd(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    private void scanIdentifier() {
+        int start = position++;
+        while (position < limit) {
+            char c = source.charAt(position);
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                position++;
+            } else {
+                break;
+            }
+        }
+
+        int length = position - start;
+        TokenType type = KeywordRecognizer.match(source, start, length);
+        if (type != null) {
+            emit(type, start, length);
+        } else {
+            emit(TokenType.IDENFR, start, length);
+            tokenPayload = symbolPool.intern(source, start, length);
+        }
+    }
+
+    /**
+     * 扫描数字的同时累加数值, 超出 int 范围时按 32 位补码截断并标记溢出
+     */
+    private void scanNumber() {
+        int start = position;
+        int value = 0;
+        boolean overflow = false;
+        while (position < limit) {
+            char c = source.charAt(position);
+            if (!Character.isDigit(c)) {
+                break;
+            }
+            int digit = Character.digit(c, 10);
+            overflow |= isOverflow(value, digit);
+            value = value * 10 + digit;
+            position++;
+        }
+        emit(TokenType.INTCON, start, position - start);
+        tokenPayload = value;
+        tokenFlags = overflow ? TokenBuffer.FLAG_OVERFLOW : 0;
+    }
+
+    /**
+     * value * 10 + digit 是否超出 int 范围; 已经溢出的值会变为负数, 同样视为溢出
+     */
+    private static boolean isOverflow(int value, int digit) {
+        return value < 0 || value > (Integer.MAX_VALUE - digit) / 10;
+    }
+
+    private void scanString() {
+        int start = position++; // 跳过开头的双引号
+        if (ascii != null) {
+            position = ascii.findQuoteOrLineEnd(position, limit);
+            if (position < limit && source.charAt(position) == '"') {
+                position++;
+            }
+            emit(TokenType.STRCON, start, position - start);
+            return;
+        }
+        while (position < limit) {
+            char c = source.charAt(position);
+            if (isLineEnd(c)) {
+                break; // 字符串不能跨行
+            }
+            position++;
+            if (c == '"') {
+                break; // 字符串结束
+            }
+        }
+        emit(TokenType.STRCON, start, position - start);
+    }
+
+    private void scanOperator() {
+        char c = source.charAt(position);
+        // 检查双字符运算符
+        if (position + 1 < limit) {
+            TokenType type = KeywordRecognizer.match(c, source.charAt(position + 1));
+            if (type != null) {
+                emit(type, position, 2);
+                position += 2;
+                return;
+            }
+        }
+
+        // 检查单字符运算符, 无法识别的字符沿用逐行模式的处理方式
+        TokenType type = KeywordRecognizer.match(c);
+        if (type == null) {
+            type = c == '&' ? TokenType.AND : TokenType.OR;
+        }
+        emit(type, position, 1);
+        position++;
+    }
+
+    private void skipSingleLineComment() {
+        if (ascii != null) {
+            position = ascii.findLineEnd(position, limit);
+            return;
+        }
+        while (position < limit && !isLineEnd(source.charAt(position))) {
+            position++;
+        }
+    }
+
+    private void skipMultiLineComment() {
+        position += 2; // 跳过/*
+        inComment = true;
+        skipCommentBody();
+    }
+
+    /**
+     * 跳过注释内容直到注释结束符, 扫描范围结束时仍在注释中则保留 inComment 状态
+     */
+    private void skipCommentBody() {
+        int end = limit;
+        if (ascii != null) {
+            int close = ascii.findCommentEnd(position, end);
+            lineNumber += ascii.takeNewlines();
+            if (close < end) {
+                position = close + 2;
+                inComment = false;
+            } else {
+                position = end;
+            }
+            return;
+        }
+
+        while (position < end) {
+            char c = source.charAt(position);
+            if (c == '*' && position + 1 < end && source.charAt(position + 1) == '/') {
+                position += 2;
+                inComment = false;
+                return;
+            }
+            if (c == '\n' || (c == '\r' && (position + 1 >= end || source.charAt(position + 1) != '\n'))) {
+                lineNumber++;
+            }
+            position++;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package lexer;
+
+/**
+ * 从 Lexer 按需拉取词法单元, 使词法分析和语法分析交替进行.
+ * 拉取的单词依次追加到 TokenBuffer 中, 语法树通过下标引用它们
+ */
+public class LookaheadTokenStream implements TokenStream {
+    private static final int INITIAL_CAPACITY = 1024;
+    // 不保留单词时的窗口大小: 远大于向前查看的距离, 平移窗口的开销分摊到每个单词上很小
+    private static final int WINDOW_CAPACITY = 64;
+
+    private final Lexer lexer;
+    private final boolean retainTokens;
+    private TokenBuffer buffer;
+    private int index = 0;
+    private boolean exhausted = false;
+
+    public LookaheadTokenStream(Lexer lexer) {
+        this(lexer, true);
+    }
+
+    /**
+     * retainTokens 为 false 时缓冲区满了就丢弃上一个被取出单词之前的全部单词, 单词占用的内存只取决于向前查看的距离,
+     * 不随输入增长; 此时 Parser 不建语法树, 只产生输出事件和错误
+     */
+    public LookaheadTokenStream(Lexer lexer, boolean retainTokens) {
+        this.lexer = lexer;
+        this.retainTokens = retainTokens;
+    }
+
+    @Override
+    public boolean hasToken(int offset) {
+        return fill(offset);
+    }
+
+    @Override
+    public int peekTypeOrdinal(int offset) {
+        if (!fill(offset)) {
+            throw new IndexOutOfBoundsException("No token at lookahead " + offset);
+        }
+        return buffer.getTypeOrdinal(index + offset);
+    }
+
+    @Override
+    public Token next() {
+        if (!fill(0)) {
+            throw new IndexOutOfBoundsException("No token at lookahead 0");
+        }
+        return buffer.getToken(index++);
+    }
+
+    @Override
+    public void skip(int count) {
+        fill(count - 1);
+        index = Math.min(index + count, buffer.size());
+    }
+
+    @Override
+    public int getPreviousLineNumber() {
+        return index > 0 ? buffer.getLineNumber(index - 1) : 0;
+    }
+
+    @Override
+    public TokenBuffer getBuffer() {
+        if (buffer == null) {
+            buffer = new TokenBuffer(lexer.getSource(), lexer.getSymbolPool(),
+                    retainTokens ? INITIAL_CAPACITY : WINDOW_CAPACITY);
+        }
+        return buffer;
+    }
+
+    @Override
+    public int getPreviousIndex() {
+        return index - 1;
+    }
+
+    @Override
+    public boolean isRetainingTokens() {
+        return retainTokens;
+    }
+
+    /**
+     * 保证缓冲区中当前位置之后至少有 offset + 1 个单词, 输入不足时返回 false
+     */
+    private boolean fill(int offset) {
+        TokenBuffer buffer = getBuffer();
+        while (buffer.size() <= index + offset && !exhausted) {
+            if (!retainTokens && buffer.isFull()) {
+                // 保留最近取出的单词, 错误报告需要它的位置
+                buffer.discardBefore(Math.max(index - 1, 0));
+            }
+            exhausted = !lexer.scanInto(buffer);
+        }
+        return buffer.size() > index + offset;
+    }
+}
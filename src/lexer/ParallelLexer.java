@@ -0,0 +1,166 @@
+package lexer;
+
+import error.ErrorHandler;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 大文件的并行分块词法分析.
+ * 输入在换行处切分成若干块, 在 ForkJoinPool 上并行扫描, 每块先假设开头不在多行注释中.
+ * 字符串和单行注释都不能跨行, 块之间唯一需要传递的状态是 "是否位于多行注释内",
+ * 拼接时按顺序检查该状态, 假设不成立的块重新扫描, 因此结果与顺序扫描完全一致
+ */
+public class ParallelLexer {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+    private final ErrorHandler errorHandler;
+    private final SymbolPool symbolPool;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelLexer(ErrorHandler errorHandler, SymbolPool symbolPool) {
+        this(errorHandler, symbolPool, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelLexer(ErrorHandler errorHandler, SymbolPool symbolPool, ForkJoinPool pool, int chunkSize) {
+        this.errorHandler = errorHandler;
+        this.symbolPool = symbolPool;
+        this.pool = pool;
+        this.chunkSize = Math.max(chunkSize, 1);
+    }
+
+    public TokenBuffer tokenize(Path path) throws IOException {
+        return tokenize(Lexer.readSource(path));
+    }
+
+    public TokenBuffer tokenize(CharBuffer buffer) {
+        CharSequence source = buffer.slice();
+        List<Chunk> chunks = split(source);
+        if (chunks.size() == 1) {
+            return new Lexer(errorHandler, symbolPool).tokenizeToBuffer(buffer);
+        }
+
+        pool.invoke(new ChunkTask(source, chunks, 0, chunks.size()));
+        return stitch(source, chunks);
+    }
+
+    /**
+     * 以 chunkSize 为目标长度, 在其后的第一个 '\n' 之后切分
+     */
+    private List<Chunk> split(CharSequence source) {
+        List<Chunk> chunks = new ArrayList<>();
+        int length = source.length();
+        int from = 0;
+        while (from < length) {
+            int to = Math.min(from + chunkSize, length);
+            while (to < length && source.charAt(to - 1) != '\n') {
+                to++;
+            }
+            chunks.add(new Chunk(from, to));
+            from = to;
+        }
+        if (chunks.isEmpty()) {
+            chunks.add(new Chunk(0, 0));
+        }
+        return chunks;
+    }
+
+    /**
+     * 按顺序拼接各块: 修正多行注释状态, 平移行号, 并把块内局部符号编号映射到共享的 SymbolPool
+     */
+    private TokenBuffer stitch(CharSequence source, List<Chunk> chunks) {
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.tokens.size();
+        }
+        TokenBuffer result = new TokenBuffer(source, symbolPool, total);
+
+        boolean inComment = false;
+        int lineBase = 0;
+        int tokenIdenfr = TokenType.IDENFR.ordinal();
+        int tokenIntcon = TokenType.INTCON.ordinal();
+        for (Chunk chunk : chunks) {
+            if (chunk.startsInComment != inComment) {
+                chunk.scan(source, inComment);
+            }
+
+            SymbolPool localPool = chunk.tokens.getSymbolPool();
+            int[] symbolMap = new int[localPool.size()];
+            for (int id = 0; id < symbolMap.length; id++) {
+                symbolMap[id] = symbolPool.intern(localPool.getName(id));
+            }
+
+            TokenBuffer tokens = chunk.tokens;
+            for (int i = 0; i < tokens.size(); i++) {
+                int payload = -1;
+                byte flag = 0;
+                if (tokens.getTypeOrdinal(i) == tokenIdenfr) {
+                    payload = symbolMap[tokens.getSymbolId(i)];
+                } else if (tokens.getTypeOrdinal(i) == tokenIntcon) {
+                    payload = tokens.getIntValue(i);
+                    flag = tokens.isOverflow(i) ? TokenBuffer.FLAG_OVERFLOW : 0;
+                }
+                result.add(tokens.getType(i), tokens.getStart(i), tokens.getLength(i),
+                        tokens.getLineNumber(i) + lineBase, payload, flag);
+            }
+
+            inComment = chunk.endsInComment;
+            lineBase += chunk.lineCount;
+        }
+        return result;
+    }
+
+    private final class Chunk {
+        private final int from;
+        private final int to;
+        private boolean startsInComment;
+        private boolean endsInComment;
+        private int lineCount;
+        private TokenBuffer tokens;
+
+        Chunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void scan(CharSequence source, boolean inComment) {
+            Lexer lexer = new Lexer(errorHandler, new SymbolPool());
+            tokens = lexer.tokenizeRange(source, from, to, inComment);
+            startsInComment = inComment;
+            endsInComment = lexer.endsInComment();
+            lineCount = lexer.getLineNumber() - 1;
+        }
+    }
+
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence source;
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+
+        ChunkTask(CharSequence source, List<Chunk> chunks, int from, int to) {
+            this.source = source;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                chunks.get(from).scan(source, false);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(source, chunks, from, middle), new ChunkTask(source, chunks, middle, to));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package lexer;
+
+import java.util.Arrays;
+
+/**
+ * 整个编译过程共享的标识符池, 将标识符驻留为从 0 开始连续编号的整数.
+ * 查找直接比较源文本中的字符, 只有第一次出现的名字才会创建字符串,
+ * 之后相同名字的单词共享同一个规范字符串, 后续阶段可以按编号建表
+ */
+public class SymbolPool {
+    private static final int EMPTY = -1;
+
+    private String[] names = new String[256];
+    private int[] hashes = new int[256];
+    private int[] slots = newSlots(512);
+    private int size = 0;
+
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * 驻留 text[start, start + length), 返回其符号编号
+     */
+    public int intern(CharSequence text, int start, int length) {
+        int hash = hash(text, start, length);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != EMPTY) {
+            int id = slots[slot];
+            if (hashes[id] == hash && contentEquals(names[id], text, start, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = size++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        names[id] = text.subSequence(start, start + length).toString();
+        hashes[id] = hash;
+        slots[slot] = id;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * 查找已驻留的名字, 不存在时返回 -1
+     */
+    public int lookup(String name) {
+        int hash = hash(name, 0, name.length());
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public String getName(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown symbol id " + id);
+        }
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        slots = newSlots(slots.length * 2);
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private static int[] newSlots(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    /**
+     * 与 String.hashCode 相同的多项式哈希, 再打散高位
+     */
+    private static int hash(CharSequence text, int start, int length) {
+        int h = 0;
+        for (int i = start, end = start + length; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean contentEquals(String name, CharSequence text, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
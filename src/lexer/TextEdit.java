@@ -0,0 +1,41 @@
+package lexer;
+
+/**
+ * 一次文本编辑: 从 offset 开始删除 removedLength 个字符, 再插入 insertedText
+ */
+public class TextEdit {
+    private final int offset;
+    private final int removedLength;
+    private final String insertedText;
+
+    public TextEdit(int offset, int removedLength, String insertedText) {
+        if (offset < 0 || removedLength < 0) {
+            throw new IllegalArgumentException("Invalid edit at " + offset + " removing " + removedLength);
+        }
+        this.offset = offset;
+        this.removedLength = removedLength;
+        this.insertedText = insertedText;
+    }
+
+    public int getOffset() { return offset; }
+    public int getRemovedLength() { return removedLength; }
+    public String getInsertedText() { return insertedText; }
+
+    /**
+     * 编辑前后同一位置之后文本的偏移量差
+     */
+    public int getDelta() {
+        return insertedText.length() - removedLength;
+    }
+
+    public String applyTo(CharSequence text) {
+        if (offset + removedLength > text.length()) {
+            throw new IllegalArgumentException("Edit exceeds text length " + text.length());
+        }
+        return new StringBuilder(text.length() + getDelta())
+                .append(text, 0, offset)
+                .append(insertedText)
+                .append(text, offset + removedLength, text.length())
+                .toString();
+    }
+}
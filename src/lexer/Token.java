@@ -3,21 +3,75 @@ package lexer;
 public class Token {
     private TokenType type;
     private String value;
+    private CharSequence source;
+    private int offset;
+    private int length;
     private int lineNumber;
+    private int symbolId = -1;
+    private int intValue;
+    private boolean overflow;
 
     public Token(TokenType type, String value, int lineNumber) {
         this.type = type;
         this.value = value;
+        this.offset = -1;
+        this.length = value.length();
         this.lineNumber = lineNumber;
     }
 
+    /**
+     * 基于源缓冲区的词法单元, 只记录偏移量和长度,
+     * 单词内容在第一次调用 getValue 时才生成
+     */
+    public Token(TokenType type, CharSequence source, int offset, int length, int lineNumber) {
+        this.type = type;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * 标识符单词, 附带 SymbolPool 中的符号编号和共享的规范名字
+     */
+    public Token(TokenType type, CharSequence source, int offset, int length, int lineNumber,
+                 int symbolId, String name) {
+        this(type, source, offset, length, lineNumber);
+        this.symbolId = symbolId;
+        this.value = name;
+    }
+
+    public Token(TokenType type, String value, int lineNumber, int symbolId) {
+        this(type, value, lineNumber);
+        this.symbolId = symbolId;
+    }
+
+    void setIntValue(int intValue, boolean overflow) {
+        this.intValue = intValue;
+        this.overflow = overflow;
+    }
+
     // Getters
     public TokenType getType() { return type; }
-    public String getValue() { return value; }
+    public String getValue() {
+        if (value == null) {
+            value = source.subSequence(offset, offset + length).toString();
+        }
+        return value;
+    }
     public int getLineNumber() { return lineNumber; }
+    public CharSequence getSource() { return source; }
+    public int getOffset() { return offset; }
+    public int getLength() { return length; }
+    /** 标识符的符号编号, 其他单词为 -1 */
+    public int getSymbolId() { return symbolId; }
+    /** 整数常量在词法分析时解码出的值, 超出 int 范围时为截断后的值 */
+    public int getIntValue() { return intValue; }
+    /** 整数常量是否超出 int 范围 */
+    public boolean isOverflow() { return overflow; }
 
     @Override
     public String toString() {
-        return type + " " + value;
+        return type + " " + getValue();
     }
-}
\ No newline at end of file
+}
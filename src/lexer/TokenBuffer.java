@@ -0,0 +1,347 @@
+package lexer;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * 以并列的基本类型数组保存词法单元序列 (类型序号, 起始偏移, 长度, 行号, 附加值),
+ * 单词内容保存在共享的源缓冲区中, 需要时才生成 Token 对象.
+ * 附加值对标识符是 SymbolPool 中的符号编号, 对整数常量是解码后的值, 对其他单词为 -1
+ */
+public class TokenBuffer {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final int DEFAULT_CAPACITY = 1024;
+    /** 整数常量超出 int 范围 */
+    public static final byte FLAG_OVERFLOW = 1;
+
+    private final CharSequence source;
+    private final SymbolPool symbolPool;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lineNumbers;
+    private int[] payloads;
+    private byte[] flags;
+    private int size = 0;
+    // discardBefore 丢弃的单词个数: 下标 index 的单词保存在数组的 index - base 处
+    private int base = 0;
+
+    public TokenBuffer(CharSequence source) {
+        this(source, null, DEFAULT_CAPACITY);
+    }
+
+    public TokenBuffer(CharSequence source, SymbolPool symbolPool, int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        this.source = source;
+        this.symbolPool = symbolPool;
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lineNumbers = new int[capacity];
+        this.payloads = new int[capacity];
+        this.flags = new byte[capacity];
+    }
+
+    /**
+     * 将已有的 Token 列表转换为缓冲区, 各单词内容依次拼接成新的源文本
+     */
+    public static TokenBuffer of(List<Token> tokens) {
+        if (tokens instanceof TokenListView) {
+            return ((TokenListView) tokens).buffer;
+        }
+        StringBuilder text = new StringBuilder();
+        TokenBuffer buffer = new TokenBuffer(text, null, tokens.size());
+        for (Token token : tokens) {
+            int start = text.length();
+            text.append(token.getValue());
+            int length = text.length() - start;
+            if (token.getType() == TokenType.INTCON) {
+                buffer.add(TokenType.INTCON, start, length, token.getLineNumber(), token.getIntValue(),
+                        token.isOverflow() ? FLAG_OVERFLOW : 0);
+            } else {
+                buffer.add(token.getType(), start, length, token.getLineNumber(), token.getSymbolId());
+            }
+        }
+        return buffer;
+    }
+
+    public void add(TokenType type, int start, int length, int lineNumber) {
+        add(type, start, length, lineNumber, -1);
+    }
+
+    public void add(TokenType type, int start, int length, int lineNumber, int payload) {
+        add(type, start, length, lineNumber, payload, (byte) 0);
+    }
+
+    public void add(TokenType type, int start, int length, int lineNumber, int payload, byte flag) {
+        int slot = size - base;
+        if (slot == types.length) {
+            grow();
+        }
+        types[slot] = (byte) type.ordinal();
+        starts[slot] = start;
+        lengths[slot] = length;
+        lineNumbers[slot] = lineNumber;
+        payloads[slot] = payload;
+        flags[slot] = flag;
+        size++;
+    }
+
+    /**
+     * 追加 other 中 [from, to) 的单词, 起始偏移和行号分别平移 startDelta 和 lineDelta
+     */
+    void addRange(TokenBuffer other, int from, int to, int startDelta, int lineDelta) {
+        int count = to - from;
+        if (count <= 0) {
+            return;
+        }
+        int source = other.slot(from);
+        int target = size - base;
+        ensureCapacity(target + count);
+        System.arraycopy(other.types, source, types, target, count);
+        System.arraycopy(other.lengths, source, lengths, target, count);
+        System.arraycopy(other.payloads, source, payloads, target, count);
+        System.arraycopy(other.flags, source, flags, target, count);
+        for (int i = 0; i < count; i++) {
+            starts[target + i] = other.starts[source + i] + startDelta;
+            lineNumbers[target + i] = other.lineNumbers[source + i] + lineDelta;
+        }
+        size += count;
+    }
+
+    void removeLast() {
+        if (size == base) {
+            throw new IllegalStateException("TokenBuffer is empty");
+        }
+        size--;
+    }
+
+    /**
+     * 丢弃下标小于 index 的单词, 释放它们占用的空间; 其余单词的下标不变, 访问已丢弃的单词抛出 IndexOutOfBoundsException.
+     * 只用于不保留语法树的流式解析, 见 LookaheadTokenStream
+     */
+    void discardBefore(int index) {
+        if (index <= base) {
+            return;
+        }
+        int keep = size - Objects.checkIndex(index, size + 1);
+        int from = index - base;
+        System.arraycopy(types, from, types, 0, keep);
+        System.arraycopy(starts, from, starts, 0, keep);
+        System.arraycopy(lengths, from, lengths, 0, keep);
+        System.arraycopy(lineNumbers, from, lineNumbers, 0, keep);
+        System.arraycopy(payloads, from, payloads, 0, keep);
+        System.arraycopy(flags, from, flags, 0, keep);
+        base = index;
+    }
+
+    /**
+     * 再追加一个单词是否需要扩容
+     */
+    boolean isFull() {
+        return size - base == types.length;
+    }
+
+    /**
+     * 下标 index 的单词在数组中的位置, 已丢弃或不存在时抛出 IndexOutOfBoundsException
+     */
+    private int slot(int index) {
+        return Objects.checkIndex(index - base, size - base);
+    }
+
+    private void ensureCapacity(int capacity) {
+        while (types.length < capacity) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        int capacity = types.length + (types.length >> 1);
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+        payloads = Arrays.copyOf(payloads, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public CharSequence getSource() { return source; }
+    public SymbolPool getSymbolPool() { return symbolPool; }
+
+    public int getTypeOrdinal(int index) {
+        return types[slot(index)];
+    }
+
+    public TokenType getType(int index) {
+        return TOKEN_TYPES[getTypeOrdinal(index)];
+    }
+
+    public int getStart(int index) {
+        return starts[slot(index)];
+    }
+
+    public int getLength(int index) {
+        return lengths[slot(index)];
+    }
+
+    /**
+     * 二分查找从源码偏移 start 开始的单词的下标, 没有时返回 -1. 单词按偏移递增排列, 偏移各不相同
+     */
+    public int indexOfStart(int start) {
+        int low = 0;
+        int high = size - base - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < start) {
+                low = middle + 1;
+            } else if (starts[middle] > start) {
+                high = middle - 1;
+            } else {
+                return middle + base;
+            }
+        }
+        return -1;
+    }
+
+    public int getLineNumber(int index) {
+        return lineNumbers[slot(index)];
+    }
+
+    /**
+     * 标识符的符号编号, 其他单词为 -1
+     */
+    public int getSymbolId(int index) {
+        int slot = slot(index);
+        return types[slot] == TokenType.IDENFR.ordinal() ? payloads[slot] : -1;
+    }
+
+    /**
+     * 整数常量解码后的值, 其他单词为 0
+     */
+    public int getIntValue(int index) {
+        int slot = slot(index);
+        return types[slot] == TokenType.INTCON.ordinal() ? payloads[slot] : 0;
+    }
+
+    public boolean isOverflow(int index) {
+        return (flags[slot(index)] & FLAG_OVERFLOW) != 0;
+    }
+
+    public String getValue(int index) {
+        int symbolId = getSymbolId(index);
+        if (symbolId >= 0 && symbolPool != null) {
+            return symbolPool.getName(symbolId);
+        }
+        int slot = index - base;
+        int start = starts[slot];
+        return source.subSequence(start, start + lengths[slot]).toString();
+    }
+
+    public Token getToken(int index) {
+        int symbolId = getSymbolId(index);
+        int slot = index - base;
+        if (symbolId >= 0) {
+            String name = symbolPool != null ? symbolPool.getName(symbolId) : null;
+            return new Token(TokenType.IDENFR, source, starts[slot], lengths[slot], lineNumbers[slot], symbolId, name);
+        }
+        Token token = new Token(TOKEN_TYPES[types[slot]], source, starts[slot], lengths[slot], lineNumbers[slot]);
+        if (types[slot] == TokenType.INTCON.ordinal()) {
+            token.setIntValue(payloads[slot], (flags[slot] & FLAG_OVERFLOW) != 0);
+        }
+        return token;
+    }
+
+    /**
+     * 从头开始按顺序读取缓冲区的单词流
+     */
+    public TokenStream stream() {
+        return new BufferTokenStream(this, 0);
+    }
+
+    /**
+     * 从下标 from 开始读取的单词流, 之前的单词视为已经取出
+     */
+    public TokenStream stream(int from) {
+        if (from < 0 || from > size) {
+            throw new IndexOutOfBoundsException("Stream start " + from + " out of bounds for size " + size);
+        }
+        return new BufferTokenStream(this, from);
+    }
+
+    /**
+     * 供仍使用 List<Token> 的调用方使用的只读视图, 每次访问时生成 Token
+     */
+    public List<Token> asList() {
+        return new TokenListView(this);
+    }
+
+    private static class BufferTokenStream implements TokenStream {
+        private final TokenBuffer buffer;
+        private int index;
+
+        BufferTokenStream(TokenBuffer buffer, int index) {
+            this.buffer = buffer;
+            this.index = index;
+        }
+
+        @Override
+        public boolean hasToken(int offset) {
+            return index + offset < buffer.size;
+        }
+
+        @Override
+        public int peekTypeOrdinal(int offset) {
+            return buffer.getTypeOrdinal(index + offset);
+        }
+
+        @Override
+        public Token next() {
+            Token token = buffer.getToken(index);
+            index++;
+            return token;
+        }
+
+        @Override
+        public int getPreviousLineNumber() {
+            return index > 0 ? buffer.getLineNumber(index - 1) : 0;
+        }
+
+        @Override
+        public void skip(int count) {
+            index = Math.min(index + count, buffer.size);
+        }
+
+        @Override
+        public TokenBuffer getBuffer() {
+            return buffer;
+        }
+
+        @Override
+        public int getPreviousIndex() {
+            return index - 1;
+        }
+    }
+
+    private static class TokenListView extends AbstractList<Token> implements RandomAccess {
+        private final TokenBuffer buffer;
+
+        TokenListView(TokenBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Token get(int index) {
+            return buffer.getToken(index);
+        }
+
+        @Override
+        public int size() {
+            return buffer.size;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package lexer;
+
+/**
+ * 语法分析器读取词法单元的接口, 只支持有限的向前查看
+ */
+public interface TokenStream {
+    /**
+     * 当前位置之后第 offset 个单词是否存在, offset 为 0 表示当前单词
+     */
+    boolean hasToken(int offset);
+
+    /**
+     * 当前位置之后第 offset 个单词的类型序号
+     */
+    int peekTypeOrdinal(int offset);
+
+    /**
+     * 取出当前单词并前进一个位置
+     */
+    Token next();
+
+    /**
+     * 不生成 Token 直接前进 count 个位置, 不能越过输入末尾
+     */
+    void skip(int count);
+
+    /**
+     * 最近一个被取出单词的行号, 尚未取出任何单词时返回 0
+     */
+    int getPreviousLineNumber();
+
+    /**
+     * 保存已读取单词的缓冲区, 语法树中的终结符以下标引用其中的单词
+     */
+    TokenBuffer getBuffer();
+
+    /**
+     * 最近一个被取出单词在 getBuffer() 中的下标, 尚未取出任何单词时返回 -1
+     */
+    int getPreviousIndex();
+
+    /**
+     * 已取出的单词是否一直留在 getBuffer() 中; 为 false 时下标只在向前查看的窗口内有效
+     */
+    default boolean isRetainingTokens() {
+        return true;
+    }
+}
@@ -0,0 +1,98 @@
+package parser;
+
+import lexer.Token;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * SyntaxTree 中一个节点的只读 SyntaxNode 视图, 子节点和单词在访问时才生成
+ */
+class ArenaSyntaxNode extends SyntaxNode {
+    private final SyntaxTree tree;
+    private final int node;
+    private List<SyntaxNode> children;
+
+    ArenaSyntaxNode(SyntaxTree tree, int node) {
+        super(tree.isTerminal(node) ? NodeType.TERMINAL : NodeType.NON_TERMINAL, tree.getKind(node));
+        this.tree = tree;
+        this.node = node;
+    }
+
+    SyntaxTree getTree() { return tree; }
+    int getNode() { return node; }
+
+    @Override
+    public void addChild(SyntaxNode child) {
+        throw new UnsupportedOperationException("SyntaxTree views are read-only");
+    }
+
+    @Override
+    public Token getToken() {
+        return tree.getToken(node);
+    }
+
+    @Override
+    public List<SyntaxNode> getChildren() {
+        if (children == null) {
+            int[] handles = new int[tree.getChildCount(node)];
+            int i = 0;
+            for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+                handles[i++] = child;
+            }
+            children = new ChildList(tree, handles);
+        }
+        return children;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return tree.getLineNumber(node);
+    }
+
+    @Override
+    public int getFirstTokenIndex() {
+        return tree.getFirstTokenIndex(node);
+    }
+
+    @Override
+    public int getLastTokenIndex() {
+        return tree.getLastTokenIndex(node);
+    }
+
+    @Override
+    public int getStartOffset() {
+        return tree.getStartOffset(node);
+    }
+
+    @Override
+    public int getEndOffset() {
+        return tree.getEndOffset(node);
+    }
+
+    @Override
+    public String toString() {
+        return getType() == NodeType.NON_TERMINAL ? getSyntaxType() : getToken().toString();
+    }
+
+    private static class ChildList extends AbstractList<SyntaxNode> implements RandomAccess {
+        private final SyntaxTree tree;
+        private final int[] handles;
+
+        ChildList(SyntaxTree tree, int[] handles) {
+            this.tree = tree;
+            this.handles = handles;
+        }
+
+        @Override
+        public SyntaxNode get(int index) {
+            return tree.view(handles[index]);
+        }
+
+        @Override
+        public int size() {
+            return handles.length;
+        }
+    }
+}
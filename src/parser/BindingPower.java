@@ -0,0 +1,50 @@
+package parser;
+
+import lexer.TokenType;
+
+/**
+ * 二元运算符的优先级表, 数值越大结合越紧; 每一级对应文法中的一个表达式非终结符.
+ * 不是二元运算符的单词优先级为 NONE
+ */
+final class BindingPower {
+    static final int NONE = 0;
+    static final int LOR = 1;
+    static final int LAND = 2;
+    static final int EQ = 3;
+    static final int REL = 4;
+    static final int ADD = 5;
+    static final int MUL = 6;
+
+    private static final byte[] POWERS = new byte[TokenType.values().length];
+    private static final SyntaxKind[] KINDS = {
+            null, SyntaxKind.LOR_EXP, SyntaxKind.LAND_EXP, SyntaxKind.EQ_EXP,
+            SyntaxKind.REL_EXP, SyntaxKind.ADD_EXP, SyntaxKind.MUL_EXP
+    };
+
+    static {
+        POWERS[TokenType.OR.ordinal()] = LOR;
+        POWERS[TokenType.AND.ordinal()] = LAND;
+        POWERS[TokenType.EQL.ordinal()] = EQ;
+        POWERS[TokenType.NEQ.ordinal()] = EQ;
+        POWERS[TokenType.LSS.ordinal()] = REL;
+        POWERS[TokenType.GRE.ordinal()] = REL;
+        POWERS[TokenType.LEQ.ordinal()] = REL;
+        POWERS[TokenType.GEQ.ordinal()] = REL;
+        POWERS[TokenType.PLUS.ordinal()] = ADD;
+        POWERS[TokenType.MINU.ordinal()] = ADD;
+        POWERS[TokenType.MULT.ordinal()] = MUL;
+        POWERS[TokenType.DIV.ordinal()] = MUL;
+        POWERS[TokenType.MOD.ordinal()] = MUL;
+    }
+
+    private BindingPower() {
+    }
+
+    static int of(int typeOrdinal) {
+        return POWERS[typeOrdinal];
+    }
+
+    static SyntaxKind kindOf(int power) {
+        return KINDS[power];
+    }
+}
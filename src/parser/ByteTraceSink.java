@@ -0,0 +1,126 @@
+package parser;
+
+import lexer.Token;
+import lexer.TokenType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 按字节批量写出 parser.txt: 单词类型名和非终结符行都预先编码,
+ * 单词内容直接从源缓冲区逐字符拷贝到输出缓冲区, 不再为每一行拼接字符串.
+ * 输出与 BufferedWriter 逐行写出的内容逐字节相同 (默认字符集, 系统行分隔符)
+ */
+public class ByteTraceSink implements ParseEventSink, Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final byte[][] tokenPrefixes;
+    private final byte[] lineSeparator;
+    // 字符集对 ASCII 字符是否为单字节原样编码, 是时 ASCII 内容可以直接拷贝
+    private final boolean asciiCompatible;
+    private final byte[] buffer;
+    private int count = 0;
+
+    public ByteTraceSink(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ByteTraceSink(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.charset = Charset.defaultCharset();
+        TokenType[] types = TokenType.values();
+        this.tokenPrefixes = new byte[types.length][];
+        for (TokenType type : types) {
+            tokenPrefixes[type.ordinal()] = (type + " ").getBytes(charset);
+        }
+        this.lineSeparator = System.lineSeparator().getBytes(charset);
+        this.asciiCompatible = isAsciiCompatible(charset);
+        this.buffer = new byte[Math.max(bufferSize, 256)];
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        byte[] ascii = new byte[128];
+        char[] chars = new char[128];
+        for (int i = 0; i < 128; i++) {
+            ascii[i] = (byte) i;
+            chars[i] = (char) i;
+        }
+        return Arrays.equals(new String(chars).getBytes(charset), ascii);
+    }
+
+    @Override
+    public void token(Token token) throws IOException {
+        write(tokenPrefixes[token.getType().ordinal()]);
+        CharSequence source = token.getSource();
+        if (!asciiCompatible || source == null || token.getOffset() < 0 || !copyAscii(source, token.getOffset(), token.getLength())) {
+            write(token.getValue().getBytes(charset));
+        }
+        write(lineSeparator);
+    }
+
+    @Override
+    public void nonTerminal(SyntaxKind kind) throws IOException {
+        write(kind.getEncodedTraceLine());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 将 source[offset, offset + length) 直接拷贝到缓冲区; 遇到非 ASCII 字符时撤销并返回 false
+     */
+    private boolean copyAscii(CharSequence source, int offset, int length) throws IOException {
+        if (length > buffer.length - count) {
+            drain();
+            if (length > buffer.length) {
+                return false;
+            }
+        }
+        int start = count;
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(offset + i);
+            if (c >= 0x80) {
+                count = start;
+                return false;
+            }
+            buffer[count++] = (byte) c;
+        }
+        return true;
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - count) {
+            drain();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void drain() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
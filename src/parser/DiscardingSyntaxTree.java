@@ -0,0 +1,40 @@
+package parser;
+
+import lexer.TokenBuffer;
+
+/**
+ * 不保存任何节点的语法树, 用于单词不保留的流式解析: 节点下标就是它的种类序号, 终结符共用一个下标,
+ * Parser 输出非终结符时仍能取得种类, 内存不随输入增长
+ */
+class DiscardingSyntaxTree extends SyntaxTree {
+    private static final SyntaxKind[] KINDS = SyntaxKind.values();
+    private static final int TERMINAL_NODE = KINDS.length;
+
+    DiscardingSyntaxTree(TokenBuffer tokens) {
+        super(tokens, 0);
+    }
+
+    @Override
+    public int addNonTerminal(SyntaxKind kind) {
+        return kind.ordinal();
+    }
+
+    @Override
+    public int addTerminal(int tokenIndex) {
+        return TERMINAL_NODE;
+    }
+
+    @Override
+    public void addChild(int parent, int child) {
+    }
+
+    @Override
+    public boolean isTerminal(int node) {
+        return node == TERMINAL_NODE;
+    }
+
+    @Override
+    public SyntaxKind getKind(int node) {
+        return isTerminal(node) ? null : KINDS[node];
+    }
+}
@@ -0,0 +1,75 @@
+package parser;
+
+import error.ErrorHandler;
+import lexer.TokenBuffer;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 并行解析的一个函数: 在独立的 Parser 中从预扫描得到的起点解析 FuncDef 或 MainFuncDef.
+ * 输出事件, 错误和语法树都留在任务本地, 由主解析器按源码顺序校验后合并
+ */
+class FunctionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final TokenBuffer buffer;
+    private final int start;
+    // 预测的函数结束位置, 即函数体的 }
+    private final int end;
+    private final boolean mainFunction;
+    private final boolean compactExpressions;
+    private final boolean explicitStack;
+    private final boolean recovery;
+
+    private final RecordingTraceSink events;
+    private final ErrorHandler errors = new ErrorHandler();
+    private SyntaxTree tree;
+    private int root = SyntaxTree.NONE;
+    // 实际解析到的最后一个单词, 放弃时为 -1
+    private int lastIndex = -1;
+    // 结果不再需要, 运行中的解析在下一个检查点放弃
+    private volatile boolean stopRequested = false;
+
+    FunctionTask(Parser owner, TokenBuffer buffer, int start, int end, boolean mainFunction) {
+        this.buffer = buffer;
+        this.events = new RecordingTraceSink(buffer);
+        this.start = start;
+        this.end = end;
+        this.mainFunction = mainFunction;
+        this.compactExpressions = owner.isCompactExpressions();
+        this.explicitStack = owner.isExplicitStack();
+        this.recovery = owner.isRecovery();
+    }
+
+    @Override
+    protected void compute() {
+        Parser parser = new Parser(buffer.stream(start), errors, events, (end - start + 1) * 3, true);
+        parser.setCompactExpressions(compactExpressions);
+        parser.setExplicitStack(explicitStack);
+        parser.setRecovery(recovery);
+        parser.setTask(this);
+        root = parser.parseFunction(mainFunction);
+        if (root != SyntaxTree.NONE) {
+            tree = parser.getSyntaxTree();
+            lastIndex = parser.getPreviousIndex();
+        }
+    }
+
+    /**
+     * 请求停止: 未开始的任务由 cancel 取消, 已在运行的由解析器在检查点放弃
+     */
+    void requestStop() {
+        stopRequested = true;
+    }
+
+    boolean isStopRequested() { return stopRequested; }
+
+    int getStart() { return start; }
+    int getEnd() { return end; }
+    boolean isMainFunction() { return mainFunction; }
+    int getLastIndex() { return lastIndex; }
+    SyntaxTree getTree() { return tree; }
+    int getRoot() { return root; }
+    RecordingTraceSink getEvents() { return events; }
+    ErrorHandler getErrors() { return errors; }
+}
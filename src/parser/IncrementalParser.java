@@ -0,0 +1,315 @@
+package parser;
+
+import error.ErrorHandler;
+import lexer.TokenBuffer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 增量语法分析: 保存上一次分析的单词, 语法树, 输出事件和错误, 以及每个 FuncDef 和 Block 覆盖的单词和节点范围.
+ * 再次 parse 编辑后的单词时, 先比较新旧单词得到未改动的前缀和后缀; 解析到 FuncDef 或 Block 时,
+ * 如果旧版本在对应位置有同种节点, 且它的单词连同之后向前查看的单词都在未改动的部分中,
+ * 就复制旧子树并重放它的输出和错误, 只有包含改动的区域重新解析.
+ * 语法分析的结果只取决于起点之后的单词, 因此输出, 错误和语法树与完整的 Parser.parse 完全相同
+ */
+public class IncrementalParser {
+    // 语法分析最多向前查看两个单词
+    private static final int LOOKAHEAD = 2;
+
+    private boolean compactExpressions = false;
+    private boolean explicitStack = false;
+    private Version previous;
+    private Version current;
+    private ErrorHandler errorHandler;
+    // 编辑前后相同的前缀长度, 以及旧/新单词中相同后缀的起点
+    private int prefix;
+    private int oldSuffixStart;
+    private int newSuffixStart;
+    // 尚未结束的 FuncDef 和 Block 的记录
+    private int[] open = new int[16];
+    private int openTop = 0;
+    private int reusedNodes = 0;
+
+    /**
+     * 与 Parser.setCompactExpressions 相同; 改变后旧版本不能再复用
+     */
+    public void setCompactExpressions(boolean compactExpressions) {
+        if (this.compactExpressions != compactExpressions) {
+            previous = null;
+        }
+        this.compactExpressions = compactExpressions;
+    }
+
+    /**
+     * 与 Parser.setExplicitStack 相同, 不影响复用
+     */
+    public void setExplicitStack(boolean explicitStack) {
+        this.explicitStack = explicitStack;
+    }
+
+    /**
+     * 丢弃上一次的结果, 下一次 parse 完整解析
+     */
+    public void reset() {
+        previous = null;
+    }
+
+    /**
+     * 解析 tokens, 尽量复用上一次 parse 的子树; 输出事件在解析结束后按顺序转发给 sink, 语法错误报告给 errorHandler.
+     * 解析抛出异常时保留上一次的结果
+     */
+    public SyntaxNode parse(TokenBuffer tokens, ErrorHandler errorHandler, ParseEventSink sink) throws IOException {
+        this.errorHandler = errorHandler;
+        this.current = new Version(tokens);
+        this.openTop = 0;
+        this.reusedNodes = 0;
+        if (previous != null) {
+            compare(previous.tokens, tokens);
+        }
+
+        Parser parser = new Parser(tokens, errorHandler, current.events);
+        parser.setCompactExpressions(compactExpressions);
+        parser.setExplicitStack(explicitStack);
+        parser.setSession(this);
+        SyntaxNode root;
+        try {
+            root = parser.parse();
+        } finally {
+            this.errorHandler = null;
+        }
+
+        current.tree = parser.getSyntaxTree();
+        current.events.replayTo(sink, tokens);
+        sink.flush();
+        previous = current;
+        current = null;
+        return root;
+    }
+
+    /**
+     * 上一次 parse 的语法树
+     */
+    public SyntaxTree getSyntaxTree() {
+        return previous == null ? null : previous.tree;
+    }
+
+    /**
+     * 上一次 parse 中从旧版本复制的节点数
+     */
+    public int getReusedNodeCount() {
+        return reusedNodes;
+    }
+
+    private void compare(TokenBuffer before, TokenBuffer after) {
+        int limit = Math.min(before.size(), after.size());
+        int same = 0;
+        while (same < limit && sameToken(before, same, after, same)) {
+            same++;
+        }
+        int suffix = 0;
+        while (suffix < limit - same && sameToken(before, before.size() - 1 - suffix, after, after.size() - 1 - suffix)) {
+            suffix++;
+        }
+        prefix = same;
+        oldSuffixStart = before.size() - suffix;
+        newSuffixStart = after.size() - suffix;
+    }
+
+    /**
+     * 类型和源文本都相同的单词对语法分析没有区别, 行号只影响错误信息, 复用时按新位置重新取得
+     */
+    private static boolean sameToken(TokenBuffer a, int i, TokenBuffer b, int j) {
+        if (a.getTypeOrdinal(i) != b.getTypeOrdinal(j) || a.getLength(i) != b.getLength(j)) {
+            return false;
+        }
+        CharSequence sourceA = a.getSource();
+        CharSequence sourceB = b.getSource();
+        int startA = a.getStart(i);
+        int startB = b.getStart(j);
+        for (int k = a.getLength(i) - 1; k >= 0; k--) {
+            if (sourceA.charAt(startA + k) != sourceB.charAt(startB + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parser 将要在当前位置解析 kind 时调用: 能复用时追加旧子树, 跳过它的单词并返回新节点, 否则返回 NONE
+     */
+    int reuse(Parser parser, SyntaxKind kind) {
+        if (previous == null) {
+            return SyntaxTree.NONE;
+        }
+        int start = parser.getPreviousIndex() + 1;
+        int oldStart;
+        int tokenShift;
+        if (start < prefix) {
+            oldStart = start;
+            tokenShift = 0;
+        } else if (start >= newSuffixStart) {
+            tokenShift = newSuffixStart - oldSuffixStart;
+            oldStart = start - tokenShift;
+        } else {
+            return SyntaxTree.NONE;
+        }
+        int record = previous.find(oldStart, kind);
+        if (record < 0) {
+            return SyntaxTree.NONE;
+        }
+        int last = previous.lastTokens[record];
+        boolean unchanged = prefix == previous.tokens.size() && prefix == current.tokens.size();
+        if (tokenShift == 0 && !unchanged && last + LOOKAHEAD >= prefix) {
+            return SyntaxTree.NONE;
+        }
+        return copy(parser, record, tokenShift);
+    }
+
+    private int copy(Parser parser, int record, int tokenShift) {
+        Version old = previous;
+        int from = old.nodes[record];
+        int to = old.nodeEnds[record];
+        int last = old.lastTokens[record];
+        int node = parser.getSyntaxTree().appendRange(old.tree, from, to, tokenShift);
+
+        int eventShift = current.events.size() - old.firstEvents[record];
+        int errorShift = current.errorCount - old.firstErrors[record];
+        current.events.appendRange(old.events, old.firstEvents[record], old.endEvents[record], tokenShift);
+        for (int i = old.firstErrors[record]; i < old.endErrors[record]; i++) {
+            int tokenIndex = old.errorTokens[i] + tokenShift;
+            // 与 Parser.reportError 相同, 偏移取报错时上一个单词的起点
+            if (tokenIndex >= 0) {
+                errorHandler.reportError(current.tokens.getLineNumber(tokenIndex), old.errorCodes[i],
+                        current.tokens.getStart(tokenIndex));
+            } else {
+                errorHandler.reportError(0, old.errorCodes[i], -1);
+            }
+            current.addError(tokenIndex, old.errorCodes[i]);
+        }
+        // 子树内部的 FuncDef 和 Block 记录紧跟在它之后, 一并平移, 下一次编辑时仍可复用
+        for (int r = record; r < old.count && old.firstTokens[r] <= last; r++) {
+            int copied = current.addRecord(old.kinds[r], old.nodes[r] - from + node, old.firstTokens[r] + tokenShift);
+            current.nodeEnds[copied] = old.nodeEnds[r] - from + node;
+            current.lastTokens[copied] = old.lastTokens[r] + tokenShift;
+            current.firstEvents[copied] = old.firstEvents[r] + eventShift;
+            current.endEvents[copied] = old.endEvents[r] + eventShift;
+            current.firstErrors[copied] = old.firstErrors[r] + errorShift;
+            current.endErrors[copied] = old.endErrors[r] + errorShift;
+        }
+
+        parser.skipTokens(last - old.firstTokens[record] + 1);
+        reusedNodes += to - from;
+        return node;
+    }
+
+    /**
+     * FuncDef 或 Block 的节点刚刚创建
+     */
+    void begin(Parser parser, int node) {
+        int record = current.addRecord((byte) parser.getSyntaxTree().getKind(node).ordinal(), node, parser.getPreviousIndex() + 1);
+        current.firstEvents[record] = current.events.size();
+        current.firstErrors[record] = current.errorCount;
+        if (openTop == open.length) {
+            open = Arrays.copyOf(open, openTop * 2);
+        }
+        open[openTop++] = record;
+    }
+
+    /**
+     * FuncDef 或 Block 已经输出, 记下它的结束位置
+     */
+    void end(Parser parser, int node) {
+        int record = open[--openTop];
+        current.nodeEnds[record] = parser.getSyntaxTree().size();
+        current.lastTokens[record] = parser.getPreviousIndex();
+        current.endEvents[record] = current.events.size();
+        current.endErrors[record] = current.errorCount;
+    }
+
+    void recordError(int tokenIndex, String errorCode) {
+        current.addError(tokenIndex, errorCode);
+    }
+
+    /**
+     * 一次 parse 的结果. FuncDef 和 Block 的记录按开始顺序排列, 因此第一个单词的下标单调不减,
+     * 嵌套在内部的记录紧跟在外层记录之后
+     */
+    private static class Version {
+        private final TokenBuffer tokens;
+        private final RecordingTraceSink events;
+        private SyntaxTree tree;
+
+        // 每个错误报告时最近取出的单词下标和错误码
+        private int[] errorTokens = new int[16];
+        private String[] errorCodes = new String[16];
+        private int errorCount = 0;
+
+        private byte[] kinds = new byte[64];
+        private int[] nodes = new int[64];
+        private int[] nodeEnds = new int[64];
+        private int[] firstTokens = new int[64];
+        private int[] lastTokens = new int[64];
+        private int[] firstEvents = new int[64];
+        private int[] endEvents = new int[64];
+        private int[] firstErrors = new int[64];
+        private int[] endErrors = new int[64];
+        private int count = 0;
+
+        Version(TokenBuffer tokens) {
+            this.tokens = tokens;
+            this.events = new RecordingTraceSink(tokens);
+        }
+
+        void addError(int tokenIndex, String errorCode) {
+            if (errorCount == errorTokens.length) {
+                errorTokens = Arrays.copyOf(errorTokens, errorCount * 2);
+                errorCodes = Arrays.copyOf(errorCodes, errorCount * 2);
+            }
+            errorTokens[errorCount] = tokenIndex;
+            errorCodes[errorCount] = errorCode;
+            errorCount++;
+        }
+
+        int addRecord(byte kind, int node, int firstToken) {
+            if (count == kinds.length) {
+                int capacity = count * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                nodes = Arrays.copyOf(nodes, capacity);
+                nodeEnds = Arrays.copyOf(nodeEnds, capacity);
+                firstTokens = Arrays.copyOf(firstTokens, capacity);
+                lastTokens = Arrays.copyOf(lastTokens, capacity);
+                firstEvents = Arrays.copyOf(firstEvents, capacity);
+                endEvents = Arrays.copyOf(endEvents, capacity);
+                firstErrors = Arrays.copyOf(firstErrors, capacity);
+                endErrors = Arrays.copyOf(endErrors, capacity);
+            }
+            kinds[count] = kind;
+            nodes[count] = node;
+            firstTokens[count] = firstToken;
+            return count++;
+        }
+
+        /**
+         * 从 firstToken 开始的 kind 节点的记录, 没有时返回 -1
+         */
+        int find(int firstToken, SyntaxKind kind) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (firstTokens[mid] < firstToken) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int r = low; r < count && firstTokens[r] == firstToken; r++) {
+                if (kinds[r] == kind.ordinal()) {
+                    return r;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package parser;
+
+import lexer.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 将输出事件按行保存在内存中, 用于测试和比较两次语法分析的输出
+ */
+public class MemoryTraceSink implements ParseEventSink {
+    private final List<String> lines = new ArrayList<>();
+
+    @Override
+    public void token(Token token) {
+        lines.add(token.toString());
+    }
+
+    @Override
+    public void nonTerminal(SyntaxKind kind) {
+        lines.add(kind.getTraceLine());
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    public List<String> getLines() {
+        return lines;
+    }
+
+    /**
+     * 与 parser.txt 内容相同的文本, 每行以系统行分隔符结尾
+     */
+    public String getTrace() {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
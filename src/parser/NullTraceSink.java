@@ -0,0 +1,20 @@
+package parser;
+
+import lexer.Token;
+
+/**
+ * 丢弃所有输出事件, 用于不需要 parser.txt 的运行
+ */
+public class NullTraceSink implements ParseEventSink {
+    @Override
+    public void token(Token token) {
+    }
+
+    @Override
+    public void nonTerminal(SyntaxKind kind) {
+    }
+
+    @Override
+    public void flush() {
+    }
+}
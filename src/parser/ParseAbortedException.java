@@ -0,0 +1,19 @@
+package parser;
+
+/**
+ * 语法分析报告的错误超过 Parser.setErrorLimit 设置的预算时抛出, 此后不再解析, 也不再产生输出事件
+ */
+public class ParseAbortedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int errorLimit;
+
+    public ParseAbortedException(int errorLimit) {
+        super("Too many syntax errors (limit " + errorLimit + ")");
+        this.errorLimit = errorLimit;
+    }
+
+    public int getErrorLimit() {
+        return errorLimit;
+    }
+}
@@ -0,0 +1,27 @@
+package parser;
+
+import lexer.Token;
+
+import java.io.IOException;
+
+/**
+ * 接收语法分析过程中按 parser.txt 顺序产生的输出事件:
+ * 每读入一个终结符调用 token, 每完成一个需要输出的非终结符调用 nonTerminal
+ */
+public interface ParseEventSink {
+    void token(Token token) throws IOException;
+
+    /**
+     * 同 token, 另外给出单词在 TokenStream.getBuffer() 中的下标; 只需要下标的 sink 可以不持有 Token
+     */
+    default void token(Token token, int index) throws IOException {
+        token(token);
+    }
+
+    void nonTerminal(SyntaxKind kind) throws IOException;
+
+    /**
+     * 语法分析结束时调用, 将缓冲的输出写出
+     */
+    void flush() throws IOException;
+}
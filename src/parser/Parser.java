@@ -2,381 +2,716 @@ package parser;
 
 import error.ErrorHandler;
 import lexer.Token;
+import lexer.TokenBuffer;
+import lexer.TokenStream;
 import lexer.TokenType;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class Parser {
-    private final List<Token> tokens;
-    private int tokenIndex = 0;
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    // 恢复模式下单词与文法不符时报告的错误码
+    private static final String SYNTAX_ERROR = "s";
+
+    // 显式栈的栈帧: [例程, 状态, 节点或共享栈下标, 参数]
+    private static final int FRAME = 4;
+    private static final int BLOCK = 0;
+    private static final int BLOCK_ITEM = 1;
+    private static final int STMT = 2;
+    private static final int FOR_STMT = 3;
+    private static final int COND = 4;
+    private static final int EXP = 5;
+    private static final int CONST_EXP = 6;
+    private static final int BINARY_EXP = 7;
+    private static final int UNARY_EXP = 8;
+    private static final int PRIMARY_EXP = 9;
+    private static final int LVAL = 10;
+    private static final int FUNC_RPARAMS = 11;
+
+    // Stmt 栈帧在子例程返回后继续执行的位置
+    private static final int STMT_LAST_CHILD = 1;
+    private static final int STMT_SEMICN = 2;
+    private static final int STMT_IF_COND = 3;
+    private static final int STMT_IF_THEN = 4;
+    private static final int STMT_FOR_INIT = 5;
+    private static final int STMT_FOR_COND = 6;
+    private static final int STMT_FOR_UPDATE = 7;
+    private static final int STMT_PRINTF_EXP = 8;
+    private static final int STMT_ASSIGN_LVAL = 9;
+
+    private final TokenStream tokens;
     private final ErrorHandler errorHandler;
-    private final BufferedWriter parserWriter;
+    private final ParseEventSink sink;
+    private final SyntaxTree tree;
+    // 单词已经全部在 TokenBuffer 中, 可以预扫描函数边界
+    private final boolean buffered;
     private SyntaxNode rootNode;
+    private boolean compactExpressions = false;
+    // 表达式解析时暂存各级节点的共享栈, 避免每个表达式分配数组
+    private int[] stack = new int[64];
+    private int stackTop = 0;
+    // 显式栈模式: 语句块, 语句和表达式的嵌套由 frames 上的栈帧驱动, 不占用 Java 调用栈
+    private boolean explicitStack = false;
+    private int[] frames = new int[FRAME * 16];
+    private int frameTop = 0;
+    // 最近一个返回的栈帧的结果节点
+    private int result = SyntaxTree.NONE;
+    // 并行解析函数: 按起点排列的任务, 以及下一个待合并的任务
+    private ForkJoinPool functionPool;
+    private FunctionTask[] functionTasks;
+    private int nextFunctionTask = 0;
+    // 作为 FunctionTask 解析一个函数时指向该任务, 用于检查是否应当放弃
+    private FunctionTask task;
+    // 增量分析时提供可复用的旧子树, 并记录新子树的范围
+    private IncrementalParser session;
+    // 恐慌模式恢复: 单词与文法不符时跳到同步点; panicking 期间不重复报告, 直到下一次成功匹配
+    private boolean recovery = false;
+    private boolean panicking = false;
+    // 错误预算, 报告的错误超过 errorLimit 个时中止解析, 0 表示不限
+    private int errorLimit = 0;
+    private int errorCount = 0;
 
     public Parser(List<Token> tokens, ErrorHandler errorHandler, BufferedWriter parserWriter) {
+        this(TokenBuffer.of(tokens), errorHandler, parserWriter);
+    }
+
+    public Parser(TokenBuffer tokens, ErrorHandler errorHandler, BufferedWriter parserWriter) {
+        this(tokens, errorHandler, new WriterTraceSink(parserWriter));
+    }
+
+    public Parser(TokenStream tokens, ErrorHandler errorHandler, BufferedWriter parserWriter) {
+        this(tokens, errorHandler, new WriterTraceSink(parserWriter));
+    }
+
+    public Parser(TokenBuffer tokens, ErrorHandler errorHandler, ParseEventSink sink) {
+        // 单词已经全部在缓冲区中时, 按每个单词约三个节点预估容量
+        this(tokens.stream(), errorHandler, sink, tokens.size() * 3, true);
+    }
+
+    /**
+     * 输出事件交给 sink, 不需要 parser.txt 时可以传入 NullTraceSink
+     */
+    public Parser(TokenStream tokens, ErrorHandler errorHandler, ParseEventSink sink) {
+        this(tokens, errorHandler, sink, tokens.getBuffer().size() * 3, false);
+    }
+
+    Parser(TokenStream tokens, ErrorHandler errorHandler, ParseEventSink sink, int treeCapacity, boolean buffered) {
         this.tokens = tokens;
         this.errorHandler = errorHandler;
-        this.parserWriter = parserWriter;
+        this.sink = sink;
+        // 单词不保留时终结符无法取回单词, 不建语法树
+        this.tree = tokens.isRetainingTokens() ? new SyntaxTree(tokens.getBuffer(), treeCapacity)
+                : new DiscardingSyntaxTree(tokens.getBuffer());
+        this.buffered = buffered;
     }
 
+    /**
+     * 解析整个 CompUnit, 返回语法树的根节点; 单词流不保留单词时不建语法树, 返回 null
+     */
     public SyntaxNode parse() {
-        rootNode = parseCompUnit();
+        tree.setRoot(parseCompUnit());
+        tree.finish();
+        rootNode = tree instanceof DiscardingSyntaxTree ? null : tree.view(tree.getRoot());
+        try {
+            sink.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         return rootNode;
     }
 
+    /**
+     * 开启后表达式的运算链建成紧凑的二叉节点, 供后续遍历使用; parser.txt 的输出不变
+     */
+    public void setCompactExpressions(boolean compactExpressions) {
+        this.compactExpressions = compactExpressions;
+    }
+
+    /**
+     * 开启后 Block, Stmt 和表达式改由堆上的显式栈驱动, 任意深的嵌套都不会 StackOverflowError;
+     * 声明和函数定义仍是递归下降, 它们的嵌套深度是固定的. 输出, 错误和语法树与递归模式完全相同
+     */
+    public void setExplicitStack(boolean explicitStack) {
+        this.explicitStack = explicitStack;
+    }
+
+    /**
+     * 开启后 consumeToken 检查单词类型: 不符时报告错误码为 s 的语法错误, 放弃当前 BlockItem,
+     * 跳过单词直到分号 (一并跳过), 右大括号或语句, 声明的关键字, 再继续解析下一个 BlockItem;
+     * 没有读入任何单词的 BlockItem (如多余的右括号) 也按语法错误跳过, 不会原地反复解析.
+     * 顶层的声明和函数头出错时无法同步, 保留已经解析的部分并结束. 合法输入和只缺少 ;)] 的输入不会报告 s,
+     * 结果不变; 唯一的区别是 a[i] + 1; 这类以带下标的 LVal 开头的表达式语句按 Exp 解析, 见 startsAssign
+     */
+    public void setRecovery(boolean recovery) {
+        this.recovery = recovery;
+    }
+
+    /**
+     * 语法分析报告的错误超过 errorLimit 个时抛出 ParseAbortedException, 不再解析也不再产生输出事件; 0 表示不限
+     */
+    public void setErrorLimit(int errorLimit) {
+        this.errorLimit = errorLimit;
+    }
+
+    /**
+     * 设置后, 以 TokenBuffer 构造的 Parser 在 CompUnit 的全局声明之后按大括号配对预扫描各函数的单词范围,
+     * 每个 FuncDef 和 MainFuncDef 在 pool 上用独立的 Parser 解析, 输出, 错误和语法树先留在任务本地.
+     * 主解析器按源码顺序逐个合并: 任务的起点, 函数种类和结束位置都与顺序解析一致时才采用, 否则就地顺序解析该函数,
+     * 因此 parser.txt, 错误列表和语法树与顺序解析完全相同. 以 TokenStream 构造时单词按需读取, 不做并行
+     */
+    public void setFunctionPool(ForkJoinPool functionPool) {
+        this.functionPool = functionPool;
+    }
+
+    /**
+     * parse 之后的语法树, parse 返回的根节点是它的 SyntaxNode 视图; 不建语法树时为 null
+     */
+    public SyntaxTree getSyntaxTree() {
+        return tree instanceof DiscardingSyntaxTree ? null : tree;
+    }
+
     private boolean matchToken(TokenType type) {
-        return tokens.get(tokenIndex).getType().equals(type);
+        return tokens.peekTypeOrdinal(0) == type.ordinal();
+    }
+
+    /**
+     * 当前单词是否属于 TokenSets 中的位集 set, 没有单词时为 false
+     */
+    private boolean matchAny(long set) {
+        return tokens.hasToken(0) && TokenSets.contains(set, tokens.peekTypeOrdinal(0));
+    }
+
+    /**
+     * 当前单词开始的 Stmt 分支, 没有单词时为 BRANCH_OTHER
+     */
+    private int stmtBranch() {
+        return tokens.hasToken(0) ? TokenSets.stmtBranch(tokens.peekTypeOrdinal(0)) : TokenSets.BRANCH_OTHER;
     }
 
     private boolean preMatchToken(TokenType type) {
-        if (tokenIndex + 1 >= tokens.size()) return false;
-        return tokens.get(tokenIndex + 1).getType().equals(type);
+        if (!tokens.hasToken(1)) return false;
+        return tokens.peekTypeOrdinal(1) == type.ordinal();
+    }
+
+    /**
+     * 语句是否按 LVal = Exp; 解析. 原有判断只看第二个单词是 [ 或 =, a[i] + 1; 这样的表达式语句也会按赋值解析;
+     * 恢复模式下 consumeToken 检查单词类型, 合法输入会因此报错, 所以改为跳过 LVal 的各维下标, 看其后是否为 =.
+     * 下标不完整时保持原有判断
+     */
+    private boolean startsAssign() {
+        if (!(tokens.hasToken(1) && (preMatchToken(TokenType.LBRACK) || preMatchToken(TokenType.ASSIGN)))) {
+            return false;
+        }
+        if (!recovery) {
+            return true;
+        }
+        int offset = 1;
+        while (tokens.hasToken(offset) && tokens.peekTypeOrdinal(offset) == TokenType.LBRACK.ordinal()) {
+            int depth = 0;
+            do {
+                if (!tokens.hasToken(offset)) {
+                    return true;
+                }
+                int type = tokens.peekTypeOrdinal(offset++);
+                if (type == TokenType.LBRACK.ordinal()) {
+                    depth++;
+                } else if (type == TokenType.RBRACK.ordinal()) {
+                    depth--;
+                } else if (TokenSets.contains(TokenSets.BLOCK_ITEM_SYNC, type)) {
+                    return true;
+                }
+            } while (depth > 0);
+        }
+        return tokens.hasToken(offset) && tokens.peekTypeOrdinal(offset) == TokenType.ASSIGN.ordinal();
     }
 
     private boolean prePreMatchToken(TokenType type) {
-        if (tokenIndex + 2 >= tokens.size()) return false;
-        return tokens.get(tokenIndex + 2).getType().equals(type);
+        if (!tokens.hasToken(2)) return false;
+        return tokens.peekTypeOrdinal(2) == type.ordinal();
     }
 
     private Token consumeToken(TokenType expectedType) {
-        Token token = tokens.get(tokenIndex);
-        tokenIndex++;
-        return token;
+        if (recovery) {
+            if (!(tokens.hasToken(0) && matchToken(expectedType))) {
+                throw syntaxError();
+            }
+            panicking = false;
+        }
+        return tokens.next();
+    }
+
+    /**
+     * 报告语法错误 (同一次恐慌中只报告一次), 返回用于退回同步点的异常
+     */
+    private SyntaxError syntaxError() {
+        if (!panicking) {
+            panicking = true;
+            reportError(SYNTAX_ERROR);
+        }
+        return SyntaxError.INSTANCE;
+    }
+
+    /**
+     * BlockItem 的同步点: 跳过单词直到分号 (一并跳过), 右大括号或语句, 声明的关键字
+     */
+    private void synchronize() {
+        while (tokens.hasToken(0) && !matchAny(TokenSets.BLOCK_ITEM_SYNC)) {
+            tokens.next();
+        }
+        if (tokens.hasToken(0) && matchToken(TokenType.SEMICN)) {
+            tokens.next();
+        }
+    }
+
+    /**
+     * 恢复模式下从 start 之后开始的 BlockItem 没有读入任何单词时, 报告语法错误并至少跳过一个单词
+     */
+    private void requireProgress(int start) {
+        if (recovery && tokens.getPreviousIndex() == start && tokens.hasToken(0)) {
+            syntaxError();
+            tokens.next();
+            synchronize();
+        }
     }
 
     private void outputToken(Token token) {
         try {
-            parserWriter.write(token.toString());
-            parserWriter.newLine();
-            // System.out.println(token.toString());
+            // 输出的总是刚取出的单词
+            sink.token(token, tokens.getPreviousIndex());
         } catch (IOException e) {
             System.out.println("Error while writing output");
             e.printStackTrace();
         }
     }
 
-    private void outputSyntaxNode(SyntaxNode node) {
-        if (node.getSyntaxType().equals("BlockItem") || node.getSyntaxType().equals("Decl") || node.getSyntaxType().equals("BType")) {
+    /**
+     * 为刚取出的单词创建终结符节点
+     */
+    private int terminalNode() {
+        return tree.addTerminal(tokens.getPreviousIndex());
+    }
+
+    private void outputSyntaxNode(int node) {
+        outputSyntaxKind(tree.getKind(node));
+    }
+
+    private void outputSyntaxKind(SyntaxKind kind) {
+        if (!kind.isTraced()) {
             return;
         }
         try {
-            parserWriter.write("<" + node.getSyntaxType() + ">");
-            parserWriter.newLine();
+            sink.nonTerminal(kind);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private int getTokenLine() {
-        if (tokenIndex < tokens.size()) return tokens.get(tokenIndex - 1).getLineNumber();
-        if (!tokens.isEmpty()) return tokens.get(tokens.size() - 1).getLineNumber();
-        return 0;
+    /**
+     * 在共享栈顶预留 count 个槽, 返回第一个槽的下标
+     */
+    private int reserve(int count) {
+        int base = stackTop;
+        if (base + count > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, base + count));
+        }
+        stackTop = base + count;
+        return base;
     }
 
-    private SyntaxNode parseCompUnit() {
-        SyntaxNode compUnitNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "CompUnit");
+    private int getTokenLine() {
+        return tokens.getPreviousLineNumber();
+    }
 
-        while (tokenIndex < tokens.size() && (matchToken(TokenType.CONSTTK) || matchToken(TokenType.STATICTK) || (matchToken(TokenType.INTTK) && preMatchToken(TokenType.IDENFR) && (!prePreMatchToken(TokenType.LPARENT))))) {
-            SyntaxNode declNode = parseDecl();
-            compUnitNode.addChild(declNode);
+    private void reportError(String errorCode) {
+        int previous = tokens.getPreviousIndex();
+        errorHandler.reportError(getTokenLine(), errorCode, previous >= 0 ? tokens.getBuffer().getStart(previous) : -1);
+        if (session != null) {
+            session.recordError(previous, errorCode);
         }
-
-        while (tokenIndex < tokens.size() && (matchToken(TokenType.VOIDTK) || (matchToken(TokenType.INTTK) && preMatchToken(TokenType.IDENFR) && prePreMatchToken(TokenType.LPARENT)))) {
-            SyntaxNode funcDefNode = parseFuncDef();
-            compUnitNode.addChild(funcDefNode);
+        if (errorLimit > 0 && ++errorCount > errorLimit) {
+            throw new ParseAbortedException(errorLimit);
         }
+    }
+
+    private int parseCompUnit() {
+        int compUnitNode = tree.addNonTerminal(SyntaxKind.COMP_UNIT);
+
+        try {
+            while (tokens.hasToken(0) && (matchToken(TokenType.CONSTTK) || matchToken(TokenType.STATICTK) || (matchToken(TokenType.INTTK) && preMatchToken(TokenType.IDENFR) && (!prePreMatchToken(TokenType.LPARENT))))) {
+                int declNode = parseDecl();
+                tree.addChild(compUnitNode, declNode);
+            }
 
-        SyntaxNode mainFuncDefNode = parseMainFuncDef();
-        compUnitNode.addChild(mainFuncDefNode);
+            // 任务中的错误不经过本解析器的计数, 设置了错误预算时顺序解析
+            if (functionPool != null && buffered && errorLimit == 0) {
+                forkFunctions();
+            }
+
+            while (tokens.hasToken(0) && (matchToken(TokenType.VOIDTK) || (matchToken(TokenType.INTTK) && preMatchToken(TokenType.IDENFR) && prePreMatchToken(TokenType.LPARENT)))) {
+                int funcDefNode = parseFuncDef();
+                tree.addChild(compUnitNode, funcDefNode);
+            }
+
+            int mainFuncDefNode = parseMainFuncDef();
+            tree.addChild(compUnitNode, mainFuncDefNode);
+        } catch (SyntaxError e) {
+            // 顶层没有同步点, 保留已经解析的部分
+        } finally {
+            cancelFunctions();
+        }
 
         outputSyntaxNode(compUnitNode);
         return compUnitNode;
     }
 
-    private SyntaxNode parseDecl() {
-        SyntaxNode declNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "Decl");
+    private int parseDecl() {
+        int declNode = tree.addNonTerminal(SyntaxKind.DECL);
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.CONSTTK)) {
-            SyntaxNode constDeclNode = parseConstDecl();
-            declNode.addChild(constDeclNode);
+        if (tokens.hasToken(0) && matchToken(TokenType.CONSTTK)) {
+            int constDeclNode = parseConstDecl();
+            tree.addChild(declNode, constDeclNode);
         } else {
-            SyntaxNode varDeclNode = parseVarDecl();
-            declNode.addChild(varDeclNode);
+            int varDeclNode = parseVarDecl();
+            tree.addChild(declNode, varDeclNode);
         }
 
         outputSyntaxNode(declNode);
         return declNode;
     }
 
-    private SyntaxNode parseConstDecl() {
-        SyntaxNode constDeclNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "ConstDecl");
+    private int parseConstDecl() {
+        int constDeclNode = tree.addNonTerminal(SyntaxKind.CONST_DECL);
 
         Token constToken = consumeToken(TokenType.CONSTTK);
-        SyntaxNode constNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, constToken);
-        constDeclNode.addChild(constNode);
+        int constNode = terminalNode();
+        tree.addChild(constDeclNode, constNode);
         outputToken(constToken);
 
-        SyntaxNode bTypeNode = parseBType();
-        constDeclNode.addChild(bTypeNode);
+        int bTypeNode = parseBType();
+        tree.addChild(constDeclNode, bTypeNode);
 
-        SyntaxNode constDefNode = parseConstDef();
-        constDeclNode.addChild(constDefNode);
+        int constDefNode = parseConstDef();
+        tree.addChild(constDeclNode, constDefNode);
 
-        while (tokenIndex < tokens.size() && matchToken(TokenType.COMMA)) {
+        while (tokens.hasToken(0) && matchToken(TokenType.COMMA)) {
             Token commaToken = consumeToken(TokenType.COMMA);
-            SyntaxNode commaNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, commaToken);
-            constDeclNode.addChild(commaNode);
+            int commaNode = terminalNode();
+            tree.addChild(constDeclNode, commaNode);
             outputToken(commaToken);
 
-            SyntaxNode nextConstDefNode = parseConstDef();
-            constDeclNode.addChild(nextConstDefNode);
+            int nextConstDefNode = parseConstDef();
+            tree.addChild(constDeclNode, nextConstDefNode);
         }
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.SEMICN)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.SEMICN)) {
             Token semicnToken = consumeToken(TokenType.SEMICN);
-            SyntaxNode semicnNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, semicnToken);
-            constDeclNode.addChild(semicnNode);
+            int semicnNode = terminalNode();
+            tree.addChild(constDeclNode, semicnNode);
             outputToken(semicnToken);
         } else {
-            errorHandler.reportError(getTokenLine(), "i");
+            reportError("i");
         }
 
         outputSyntaxNode(constDeclNode);
         return constDeclNode;
     }
 
-    private SyntaxNode parseBType() {
-        SyntaxNode bTypeNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "BType");
+    private int parseBType() {
+        int bTypeNode = tree.addNonTerminal(SyntaxKind.BTYPE);
 
         Token intToken = consumeToken(TokenType.INTTK);
-        SyntaxNode intNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, intToken);
-        bTypeNode.addChild(intNode);
+        int intNode = terminalNode();
+        tree.addChild(bTypeNode, intNode);
         outputToken(intToken);
 
         outputSyntaxNode(bTypeNode);
         return bTypeNode;
     }
 
-    private SyntaxNode parseConstDef() {
-        SyntaxNode constDefNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "ConstDef");
+    private int parseConstDef() {
+        int constDefNode = tree.addNonTerminal(SyntaxKind.CONST_DEF);
 
         Token identToken = consumeToken(TokenType.IDENFR);
-        SyntaxNode identNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, identToken);
-        constDefNode.addChild(identNode);
+        int identNode = terminalNode();
+        tree.addChild(constDefNode, identNode);
         outputToken(identToken);
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.LBRACK)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.LBRACK)) {
             Token lBrackToken = consumeToken(TokenType.LBRACK);
-            SyntaxNode lBrackNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lBrackToken);
-            constDefNode.addChild(lBrackNode);
+            int lBrackNode = terminalNode();
+            tree.addChild(constDefNode, lBrackNode);
             outputToken(lBrackToken);
 
-            SyntaxNode constExpNode = parseConstExp();
-            constDefNode.addChild(constExpNode);
+            int constExpNode = parseConstExp();
+            tree.addChild(constDefNode, constExpNode);
 
             if (matchToken(TokenType.RBRACK)) {
                 Token rBrackToken = consumeToken(TokenType.RBRACK);
-                SyntaxNode rBrackNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rBrackToken);
-                constDefNode.addChild(rBrackNode);
+                int rBrackNode = terminalNode();
+                tree.addChild(constDefNode, rBrackNode);
                 outputToken(rBrackToken);
             } else {
-                errorHandler.reportError(getTokenLine(), "k");
+                reportError("k");
             }
         }
 
         Token assignToken = consumeToken(TokenType.ASSIGN);
-        SyntaxNode assignNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, assignToken);
-        constDefNode.addChild(assignNode);
+        int assignNode = terminalNode();
+        tree.addChild(constDefNode, assignNode);
         outputToken(assignToken);
 
-        SyntaxNode constInitValNode = parseConstInitVal();
-        constDefNode.addChild(constInitValNode);
+        int constInitValNode = parseConstInitVal();
+        tree.addChild(constDefNode, constInitValNode);
 
         outputSyntaxNode(constDefNode);
         return constDefNode;
     }
 
-    private SyntaxNode parseConstExp() {
-        SyntaxNode constExpNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "ConstExp");
+    private int parseConstExp() {
+        if (explicitStack) {
+            return run(CONST_EXP, SyntaxTree.NONE);
+        }
+        int constExpNode = tree.addNonTerminal(SyntaxKind.CONST_EXP);
 
-        SyntaxNode addExpNode = parseAddExp();
-        constExpNode.addChild(addExpNode);
+        int addExpNode = parseBinaryExp(BindingPower.ADD);
+        tree.addChild(constExpNode, addExpNode);
 
         outputSyntaxNode(constExpNode);
         return constExpNode;
     }
 
-    private SyntaxNode parseAddExp() {
-        SyntaxNode addExpNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "AddExp");
-
-        SyntaxNode mulExpNode = parseMulExp();
-        addExpNode.addChild(mulExpNode);
-        outputSyntaxNode(addExpNode);
-
-        while (tokenIndex < tokens.size() && (matchToken(TokenType.PLUS) || matchToken(TokenType.MINU))) {
-            if (matchToken(TokenType.PLUS)) {
-                Token plusToken = consumeToken(TokenType.PLUS);
-                SyntaxNode plusNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, plusToken);
-                addExpNode.addChild(plusNode);
-                outputToken(plusToken);
-            } else {
-                Token minusToken = consumeToken(TokenType.MINU);
-                SyntaxNode minusNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, minusToken);
-                addExpNode.addChild(minusNode);
-                outputToken(minusToken);
+    /**
+     * 用优先级表在一个循环中解析从 power 到 MUL 各级的二元运算链.
+     * 每一级在共享栈上占两个槽: 该级当前的节点和尚未接上右操作数的运算符.
+     * 遇到优先级更低的运算符时逐级收拢, 收拢到某一级就输出一次该级的非终结符,
+     * 因此 parser.txt 与逐级递归下降的输出相同.
+     * 文法模式下每一级都是一个 AddExp/MulExp 等节点, 子节点为操作数和运算符交替的列表;
+     * 紧凑模式下只为实际出现的运算符建立 [左操作数, 运算符, 右操作数] 的二叉节点
+     */
+    private int parseBinaryExp(int power) {
+        int base = reserve(2 * (BindingPower.MUL + 1));
+        openLevels(base, power);
+
+        while (true) {
+            int operand = parseUnaryExp();
+            int next = reduceOperand(base, power, operand);
+            if (next < power) {
+                break;
             }
-            SyntaxNode nextMulExpNode = parseMulExp();
-            addExpNode.addChild(nextMulExpNode);
-            outputSyntaxNode(addExpNode);
+            shiftOperator(base, next);
         }
 
-        return addExpNode;
+        int result = stack[base + 2 * power];
+        stackTop = base;
+        return result;
     }
 
-    private SyntaxNode parseMulExp() {
-        SyntaxNode mulExpNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "MulExp");
+    /**
+     * 接上一个一元表达式操作数, 并把优先级高于下一个运算符的各级收拢; 返回下一个运算符的优先级
+     */
+    private int reduceOperand(int base, int power, int operand) {
+        completeOperand(base, BindingPower.MUL, operand);
 
-        SyntaxNode unaryExpNode = parseUnaryExp();
-        mulExpNode.addChild(unaryExpNode);
-        outputSyntaxNode(mulExpNode);
+        int next = tokens.hasToken(0) ? BindingPower.of(tokens.peekTypeOrdinal(0)) : BindingPower.NONE;
+        int stop = Math.max(next, power);
+        for (int level = BindingPower.MUL; level > stop; level--) {
+            completeOperand(base, level - 1, stack[base + 2 * level]);
+        }
+        return next;
+    }
 
-        while (tokenIndex < tokens.size() && (matchToken(TokenType.MULT) || matchToken(TokenType.DIV) ||  matchToken(TokenType.MOD))) {
-            if (matchToken(TokenType.MULT)) {
-                Token multToken = consumeToken(TokenType.MULT);
-                SyntaxNode multNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, multToken);
-                mulExpNode.addChild(multNode);
-                outputToken(multToken);
-            } else if (matchToken(TokenType.DIV)) {
-                Token divToken = consumeToken(TokenType.DIV);
-                SyntaxNode divNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, divToken);
-                mulExpNode.addChild(divNode);
-                outputToken(divToken);
-            } else {
-                Token modToken = consumeToken(TokenType.MOD);
-                SyntaxNode modNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, modToken);
-                mulExpNode.addChild(modNode);
-                outputToken(modToken);
-            }
-            SyntaxNode nextMulExpNode = parseUnaryExp();
-            mulExpNode.addChild(nextMulExpNode);
-            outputSyntaxNode(mulExpNode);
+    /**
+     * 取出优先级为 next 的运算符并为更高的各级开始新的运算链
+     */
+    private void shiftOperator(int base, int next) {
+        Token operatorToken = consumeToken(TOKEN_TYPES[tokens.peekTypeOrdinal(0)]);
+        int operatorNode = terminalNode();
+        if ((next == BindingPower.LOR && operatorToken.getValue().equals("|"))
+                || (next == BindingPower.LAND && operatorToken.getValue().equals("&"))) {
+            reportError("a");
+        }
+        outputToken(operatorToken);
+        if (compactExpressions) {
+            stack[base + 2 * next + 1] = operatorNode;
+        } else {
+            tree.addChild(stack[base + 2 * next], operatorNode);
         }
+        openLevels(base, next + 1);
+    }
 
-        return mulExpNode;
+    /**
+     * 为 from 到 MUL 的各级开始新的运算链
+     */
+    private void openLevels(int base, int from) {
+        for (int level = from; level <= BindingPower.MUL; level++) {
+            stack[base + 2 * level] = compactExpressions ? SyntaxTree.NONE : tree.addNonTerminal(BindingPower.kindOf(level));
+            stack[base + 2 * level + 1] = SyntaxTree.NONE;
+        }
     }
 
-    private SyntaxNode parseUnaryExp() {
-        SyntaxNode unaryExpNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "UnaryExp");
+    /**
+     * 第 level 级得到一个完整的操作数
+     */
+    private void completeOperand(int base, int level, int operand) {
+        int slot = base + 2 * level;
+        SyntaxKind kind = BindingPower.kindOf(level);
+        if (!compactExpressions) {
+            tree.addChild(stack[slot], operand);
+        } else if (stack[slot + 1] != SyntaxTree.NONE) {
+            int binaryNode = tree.addNonTerminal(kind);
+            tree.addChild(binaryNode, stack[slot]);
+            tree.addChild(binaryNode, stack[slot + 1]);
+            tree.addChild(binaryNode, operand);
+            stack[slot] = binaryNode;
+            stack[slot + 1] = SyntaxTree.NONE;
+        } else {
+            stack[slot] = operand;
+        }
+        outputSyntaxKind(kind);
+    }
 
-        if (tokenIndex < tokens.size() && (matchToken(TokenType.PLUS) || matchToken(TokenType.MINU) || matchToken(TokenType.NOT))) {
-            SyntaxNode unaryOpNode = parseUnaryOp();
-            unaryExpNode.addChild(unaryOpNode);
+    private int parseUnaryExp() {
+        int base = stackTop;
+        int unaryExpNode = openUnaryExp();
 
-            SyntaxNode nextUnaryExpNode = parseUnaryExp();
-            unaryExpNode.addChild(nextUnaryExpNode);
-        } else if (matchToken(TokenType.LPARENT) || matchToken(TokenType.INTCON)) {
-            SyntaxNode primaryExpNode = parsePrimaryExp();
-            unaryExpNode.addChild(primaryExpNode);
+        if (TokenSets.contains(TokenSets.PRIMARY_NOT_LVAL, tokens.peekTypeOrdinal(0))) {
+            int primaryExpNode = parsePrimaryExp();
+            tree.addChild(unaryExpNode, primaryExpNode);
         } else if (preMatchToken(TokenType.LPARENT)) {
             Token idenToken = consumeToken(TokenType.IDENFR);
-            SyntaxNode idenNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, idenToken);
-            unaryExpNode.addChild(idenNode);
+            int idenNode = terminalNode();
+            tree.addChild(unaryExpNode, idenNode);
             outputToken(idenToken);
 
             Token lParenToken = consumeToken(TokenType.LPARENT);
-            SyntaxNode lParenNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lParenToken);
-            unaryExpNode.addChild(lParenNode);
+            int lParenNode = terminalNode();
+            tree.addChild(unaryExpNode, lParenNode);
             outputToken(lParenToken);
 
-            if (tokenIndex < tokens.size() && (matchToken(TokenType.PLUS) || matchToken(TokenType.MINU) || matchToken(TokenType.NOT) || matchToken(TokenType.IDENFR) || matchToken(TokenType.LPARENT) || matchToken(TokenType.INTCON))) {
-                SyntaxNode funcRParamsNode = parseFuncRParams();
-                unaryExpNode.addChild(funcRParamsNode);
+            if (matchAny(TokenSets.EXP_FIRST)) {
+                int funcRParamsNode = parseFuncRParams();
+                tree.addChild(unaryExpNode, funcRParamsNode);
             }
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.RPARENT)) {
+            if (tokens.hasToken(0) && matchToken(TokenType.RPARENT)) {
                 Token rParenToken = consumeToken(TokenType.RPARENT);
-                SyntaxNode rParenNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rParenToken);
-                unaryExpNode.addChild(rParenNode);
+                int rParenNode = terminalNode();
+                tree.addChild(unaryExpNode, rParenNode);
                 outputToken(rParenToken);
             } else {
-                errorHandler.reportError(getTokenLine(), "j");
+                reportError("j");
             }
         } else {
-            SyntaxNode primaryExpNode = parsePrimaryExp();
-            unaryExpNode.addChild(primaryExpNode);
+            int primaryExpNode = parsePrimaryExp();
+            tree.addChild(unaryExpNode, primaryExpNode);
         }
 
+        return closeUnaryExp(base, unaryExpNode);
+    }
+
+    /**
+     * 连续的一元运算符在循环中处理, 外层的 UnaryExp 暂存在共享栈上; 返回最内层的 UnaryExp
+     */
+    private int openUnaryExp() {
+        int unaryExpNode = tree.addNonTerminal(SyntaxKind.UNARY_EXP);
+        while (matchAny(TokenSets.UNARY_OP)) {
+            int unaryOpNode = parseUnaryOp();
+            tree.addChild(unaryExpNode, unaryOpNode);
+            // reserve 可能换掉 stack 数组, 必须先取下标再写入
+            int slot = reserve(1);
+            stack[slot] = unaryExpNode;
+            unaryExpNode = tree.addNonTerminal(SyntaxKind.UNARY_EXP);
+        }
+        return unaryExpNode;
+    }
+
+    /**
+     * 输出最内层的 UnaryExp, 再把共享栈上 base 之后暂存的外层逐个接上并输出, 返回最外层
+     */
+    private int closeUnaryExp(int base, int unaryExpNode) {
         outputSyntaxNode(unaryExpNode);
+        while (stackTop > base) {
+            int outerNode = stack[--stackTop];
+            tree.addChild(outerNode, unaryExpNode);
+            outputSyntaxNode(outerNode);
+            unaryExpNode = outerNode;
+        }
         return unaryExpNode;
     }
 
-    private SyntaxNode parsePrimaryExp() {
-        SyntaxNode primaryExpNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "PrimaryExp");
-        if (tokenIndex < tokens.size() && matchToken(TokenType.LPARENT)) {
+    private int parsePrimaryExp() {
+        int primaryExpNode = tree.addNonTerminal(SyntaxKind.PRIMARY_EXP);
+        if (tokens.hasToken(0) && matchToken(TokenType.LPARENT)) {
             Token lParentToken = consumeToken(TokenType.LPARENT);
-            SyntaxNode lParentNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lParentToken);
-            primaryExpNode.addChild(lParentNode);
+            int lParentNode = terminalNode();
+            tree.addChild(primaryExpNode, lParentNode);
             outputToken(lParentToken);
 
-            SyntaxNode expNode = parseExp();
-            primaryExpNode.addChild(expNode);
+            int expNode = parseExp();
+            tree.addChild(primaryExpNode, expNode);
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.RPARENT)) {
+            if (tokens.hasToken(0) && matchToken(TokenType.RPARENT)) {
                 Token rParentToken = consumeToken(TokenType.RPARENT);
-                SyntaxNode rParentNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rParentToken);
-                primaryExpNode.addChild(rParentNode);
+                int rParentNode = terminalNode();
+                tree.addChild(primaryExpNode, rParentNode);
                 outputToken(rParentToken);
             } else {
-                errorHandler.reportError(getTokenLine(), "j");
+                reportError("j");
             }
-        } else if (tokenIndex < tokens.size() && matchToken(TokenType.IDENFR)) {
-            SyntaxNode lValNode = parseLVal();
-            primaryExpNode.addChild(lValNode);
+        } else if (tokens.hasToken(0) && matchToken(TokenType.IDENFR)) {
+            int lValNode = parseLVal();
+            tree.addChild(primaryExpNode, lValNode);
         } else {
-            SyntaxNode numberNode = parseNumber();
-            primaryExpNode.addChild(numberNode);
+            int numberNode = parseNumber();
+            tree.addChild(primaryExpNode, numberNode);
         }
 
         outputSyntaxNode(primaryExpNode);
         return primaryExpNode;
     }
 
-    private SyntaxNode parseExp() {
-        SyntaxNode expNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "Exp");
+    private int parseExp() {
+        if (explicitStack) {
+            return run(EXP, SyntaxTree.NONE);
+        }
+        int expNode = tree.addNonTerminal(SyntaxKind.EXP);
 
-        SyntaxNode addExpNode = parseAddExp();
-        expNode.addChild(addExpNode);
+        int addExpNode = parseBinaryExp(BindingPower.ADD);
+        tree.addChild(expNode, addExpNode);
 
         outputSyntaxNode(expNode);
         return expNode;
     }
 
-    private SyntaxNode parseLVal() {
-        SyntaxNode lValNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "LVal");
+    private int parseLVal() {
+        int lValNode = tree.addNonTerminal(SyntaxKind.LVAL);
 
         Token idenToken = consumeToken(TokenType.IDENFR);
-        SyntaxNode idenNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, idenToken);
-        lValNode.addChild(idenNode);
+        int idenNode = terminalNode();
+        tree.addChild(lValNode, idenNode);
         outputToken(idenToken);
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.LBRACK)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.LBRACK)) {
             Token lBrackToken = consumeToken(TokenType.LBRACK);
-            SyntaxNode lBrackNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lBrackToken);
-            lValNode.addChild(lBrackNode);
+            int lBrackNode = terminalNode();
+            tree.addChild(lValNode, lBrackNode);
             outputToken(lBrackToken);
 
-            SyntaxNode expNode = parseExp();
-            lValNode.addChild(expNode);
+            int expNode = parseExp();
+            tree.addChild(lValNode, expNode);
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.RBRACK)) {
+            if (tokens.hasToken(0) && matchToken(TokenType.RBRACK)) {
                 Token rBrackToken = consumeToken(TokenType.RBRACK);
-                SyntaxNode rBrackNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rBrackToken);
-                lValNode.addChild(rBrackNode);
+                int rBrackNode = terminalNode();
+                tree.addChild(lValNode, rBrackNode);
                 outputToken(rBrackToken);
             } else {
-                errorHandler.reportError(getTokenLine(), "k");
+                reportError("k");
             }
         }
 
@@ -384,55 +719,55 @@ public class Parser {
         return lValNode;
     }
 
-    private SyntaxNode parseNumber() {
-        SyntaxNode numberNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "Number");
+    private int parseNumber() {
+        int numberNode = tree.addNonTerminal(SyntaxKind.NUMBER);
 
         Token intConToken = consumeToken(TokenType.INTCON);
-        SyntaxNode intConNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, intConToken);
-        numberNode.addChild(intConNode);
+        int intConNode = terminalNode();
+        tree.addChild(numberNode, intConNode);
         outputToken(intConToken);
 
         outputSyntaxNode(numberNode);
         return numberNode;
     }
 
-    private SyntaxNode parseFuncRParams() {
-        SyntaxNode funcRParamsNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "FuncRParams");
+    private int parseFuncRParams() {
+        int funcRParamsNode = tree.addNonTerminal(SyntaxKind.FUNC_RPARAMS);
 
-        SyntaxNode expNode = parseExp();
-        funcRParamsNode.addChild(expNode);
+        int expNode = parseExp();
+        tree.addChild(funcRParamsNode, expNode);
 
-        while (tokenIndex + 1 < tokens.size() && matchToken(TokenType.COMMA)) {
+        while (tokens.hasToken(1) && matchToken(TokenType.COMMA)) {
             Token commaToken = consumeToken(TokenType.COMMA);
-            SyntaxNode commaNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, commaToken);
-            funcRParamsNode.addChild(commaNode);
+            int commaNode = terminalNode();
+            tree.addChild(funcRParamsNode, commaNode);
             outputToken(commaToken);
 
-            SyntaxNode nextExpNode = parseExp();
-            funcRParamsNode.addChild(nextExpNode);
+            int nextExpNode = parseExp();
+            tree.addChild(funcRParamsNode, nextExpNode);
         }
 
         outputSyntaxNode(funcRParamsNode);
         return funcRParamsNode;
     }
 
-    private SyntaxNode parseUnaryOp() {
-        SyntaxNode unaryOpNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "UnaryOp");
-        if (tokenIndex < tokens.size()) {
+    private int parseUnaryOp() {
+        int unaryOpNode = tree.addNonTerminal(SyntaxKind.UNARY_OP);
+        if (tokens.hasToken(0)) {
             if (matchToken(TokenType.PLUS)) {
                 Token plusToken = consumeToken(TokenType.PLUS);
-                SyntaxNode plusNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, plusToken);
-                unaryOpNode.addChild(plusNode);
+                int plusNode = terminalNode();
+                tree.addChild(unaryOpNode, plusNode);
                 outputToken(plusToken);
             } else if (matchToken(TokenType.MINU)) {
                 Token minuToken = consumeToken(TokenType.MINU);
-                SyntaxNode minuNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, minuToken);
-                unaryOpNode.addChild(minuNode);
+                int minuNode = terminalNode();
+                tree.addChild(unaryOpNode, minuNode);
                 outputToken(minuToken);
             } else {
                 Token notToken = consumeToken(TokenType.NOT);
-                SyntaxNode notNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, notToken);
-                unaryOpNode.addChild(notNode);
+                int notNode = terminalNode();
+                tree.addChild(unaryOpNode, notNode);
                 outputToken(notToken);
             }
         }
@@ -441,219 +776,230 @@ public class Parser {
         return unaryOpNode;
     }
 
-    private SyntaxNode parseConstInitVal() {
-        SyntaxNode constInitValNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "ConstInitVal");
+    private int parseConstInitVal() {
+        int constInitValNode = tree.addNonTerminal(SyntaxKind.CONST_INIT_VAL);
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.LBRACE)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.LBRACE)) {
             Token lBraceToken = consumeToken(TokenType.LBRACE);
-            SyntaxNode lBraceNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lBraceToken);
-            constInitValNode.addChild(lBraceNode);
+            int lBraceNode = terminalNode();
+            tree.addChild(constInitValNode, lBraceNode);
             outputToken(lBraceToken);
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.RBRACE)) {
+            if (tokens.hasToken(0) && matchToken(TokenType.RBRACE)) {
                 Token rBraceToken = consumeToken(TokenType.RBRACE);
-                SyntaxNode rBraceNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rBraceToken);
-                constInitValNode.addChild(rBraceNode);
+                int rBraceNode = terminalNode();
+                tree.addChild(constInitValNode, rBraceNode);
                 outputToken(rBraceToken);
             } else {
-                SyntaxNode constExpNode = parseConstExp();
-                constInitValNode.addChild(constExpNode);
+                int constExpNode = parseConstExp();
+                tree.addChild(constInitValNode, constExpNode);
 
-                while (tokenIndex < tokens.size() && matchToken(TokenType.COMMA)) {
+                while (tokens.hasToken(0) && matchToken(TokenType.COMMA)) {
                     Token commaToken = consumeToken(TokenType.COMMA);
-                    SyntaxNode commaNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, commaToken);
-                    constInitValNode.addChild(commaNode);
+                    int commaNode = terminalNode();
+                    tree.addChild(constInitValNode, commaNode);
                     outputToken(commaToken);
 
-                    SyntaxNode nextConstExpNode = parseConstExp();
-                    constInitValNode.addChild(nextConstExpNode);
+                    int nextConstExpNode = parseConstExp();
+                    tree.addChild(constInitValNode, nextConstExpNode);
                 }
 
                 Token rBraceToken = consumeToken(TokenType.RBRACE);
-                SyntaxNode rBraceNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rBraceToken);
-                constInitValNode.addChild(rBraceNode);
+                int rBraceNode = terminalNode();
+                tree.addChild(constInitValNode, rBraceNode);
                 outputToken(rBraceToken);
             }
         } else {
-            SyntaxNode constExpNode = parseConstExp();
-            constInitValNode.addChild(constExpNode);
+            int constExpNode = parseConstExp();
+            tree.addChild(constInitValNode, constExpNode);
         }
 
         outputSyntaxNode(constInitValNode);
         return constInitValNode;
     }
 
-    private SyntaxNode parseVarDecl() {
-        SyntaxNode varDeclNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "VarDecl");
+    private int parseVarDecl() {
+        int varDeclNode = tree.addNonTerminal(SyntaxKind.VAR_DECL);
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.STATICTK)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.STATICTK)) {
             Token staticToken = consumeToken(TokenType.STATICTK);
-            SyntaxNode staticNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, staticToken);
-            varDeclNode.addChild(staticNode);
+            int staticNode = terminalNode();
+            tree.addChild(varDeclNode, staticNode);
             outputToken(staticToken);
         }
 
-        SyntaxNode bTypeNode = parseBType();
-        varDeclNode.addChild(bTypeNode);
+        int bTypeNode = parseBType();
+        tree.addChild(varDeclNode, bTypeNode);
 
-        SyntaxNode varDefNode = parseVarDef();
-        varDeclNode.addChild(varDefNode);
+        int varDefNode = parseVarDef();
+        tree.addChild(varDeclNode, varDefNode);
 
-        while (tokenIndex < tokens.size() && matchToken(TokenType.COMMA)) {
+        while (tokens.hasToken(0) && matchToken(TokenType.COMMA)) {
             Token commaToken = consumeToken(TokenType.COMMA);
-            SyntaxNode commaNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, commaToken);
-            varDeclNode.addChild(commaNode);
+            int commaNode = terminalNode();
+            tree.addChild(varDeclNode, commaNode);
             outputToken(commaToken);
 
-            SyntaxNode nextVarDefNode = parseVarDef();
-            varDeclNode.addChild(nextVarDefNode);
+            int nextVarDefNode = parseVarDef();
+            tree.addChild(varDeclNode, nextVarDefNode);
         }
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.SEMICN)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.SEMICN)) {
             Token semicnToken = consumeToken(TokenType.SEMICN);
-            SyntaxNode semicnNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, semicnToken);
-            varDeclNode.addChild(semicnNode);
+            int semicnNode = terminalNode();
+            tree.addChild(varDeclNode, semicnNode);
             outputToken(semicnToken);
         } else {
-            errorHandler.reportError(getTokenLine(), "i");
+            reportError("i");
         }
 
         outputSyntaxNode(varDeclNode);
         return varDeclNode;
     }
 
-    private SyntaxNode parseVarDef() {
-        SyntaxNode varDefNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "VarDef");
+    private int parseVarDef() {
+        int varDefNode = tree.addNonTerminal(SyntaxKind.VAR_DEF);
 
         Token idenToken = consumeToken(TokenType.IDENFR);
-        SyntaxNode idenNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, idenToken);
-        varDefNode.addChild(idenNode);
+        int idenNode = terminalNode();
+        tree.addChild(varDefNode, idenNode);
         outputToken(idenToken);
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.LBRACK)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.LBRACK)) {
             Token lBrackToken = consumeToken(TokenType.LBRACK);
-            SyntaxNode lBrackNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lBrackToken);
-            varDefNode.addChild(lBrackNode);
+            int lBrackNode = terminalNode();
+            tree.addChild(varDefNode, lBrackNode);
             outputToken(lBrackToken);
 
-            SyntaxNode constExpNode = parseConstExp();
-            varDefNode.addChild(constExpNode);
+            int constExpNode = parseConstExp();
+            tree.addChild(varDefNode, constExpNode);
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.RBRACK)) {
+            if (tokens.hasToken(0) && matchToken(TokenType.RBRACK)) {
                 Token rBrackToken = consumeToken(TokenType.RBRACK);
-                SyntaxNode rBrackNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rBrackToken);
-                varDefNode.addChild(rBrackNode);
+                int rBrackNode = terminalNode();
+                tree.addChild(varDefNode, rBrackNode);
                 outputToken(rBrackToken);
             } else {
-                errorHandler.reportError(getTokenLine(), "k");
+                reportError("k");
             }
         }
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.ASSIGN)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.ASSIGN)) {
             Token assignToken = consumeToken(TokenType.ASSIGN);
-            SyntaxNode assignNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, assignToken);
-            varDefNode.addChild(assignNode);
+            int assignNode = terminalNode();
+            tree.addChild(varDefNode, assignNode);
             outputToken(assignToken);
 
-            SyntaxNode initValNode = parseInitVal();
-            varDefNode.addChild(initValNode);
+            int initValNode = parseInitVal();
+            tree.addChild(varDefNode, initValNode);
         }
 
         outputSyntaxNode(varDefNode);
         return varDefNode;
     }
 
-    private SyntaxNode parseInitVal() {
-        SyntaxNode initValNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "InitVal");
+    private int parseInitVal() {
+        int initValNode = tree.addNonTerminal(SyntaxKind.INIT_VAL);
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.LBRACE)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.LBRACE)) {
             Token lBraceToken = consumeToken(TokenType.LBRACE);
-            SyntaxNode lBraceNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lBraceToken);
-            initValNode.addChild(lBraceNode);
+            int lBraceNode = terminalNode();
+            tree.addChild(initValNode, lBraceNode);
             outputToken(lBraceToken);
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.RBRACE)) {
+            if (tokens.hasToken(0) && matchToken(TokenType.RBRACE)) {
                 Token rBraceToken = consumeToken(TokenType.RBRACE);
-                SyntaxNode rBraceNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rBraceToken);
-                initValNode.addChild(rBraceNode);
+                int rBraceNode = terminalNode();
+                tree.addChild(initValNode, rBraceNode);
                 outputToken(rBraceToken);
             } else {
-                SyntaxNode expNode = parseExp();
-                initValNode.addChild(expNode);
+                int expNode = parseExp();
+                tree.addChild(initValNode, expNode);
 
-                while (tokenIndex < tokens.size() && matchToken(TokenType.COMMA)) {
+                while (tokens.hasToken(0) && matchToken(TokenType.COMMA)) {
                     Token commaToken = consumeToken(TokenType.COMMA);
-                    SyntaxNode commaNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, commaToken);
-                    initValNode.addChild(commaNode);
+                    int commaNode = terminalNode();
+                    tree.addChild(initValNode, commaNode);
                     outputToken(commaToken);
 
-                    SyntaxNode nextExpNode = parseExp();
-                    initValNode.addChild(nextExpNode);
+                    int nextExpNode = parseExp();
+                    tree.addChild(initValNode, nextExpNode);
                 }
 
                 Token rBraceToken = consumeToken(TokenType.RBRACE);
-                SyntaxNode rBraceNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rBraceToken);
-                initValNode.addChild(rBraceNode);
+                int rBraceNode = terminalNode();
+                tree.addChild(initValNode, rBraceNode);
                 outputToken(rBraceToken);
             }
         } else {
-            SyntaxNode expNode = parseExp();
-            initValNode.addChild(expNode);
+            int expNode = parseExp();
+            tree.addChild(initValNode, expNode);
         }
 
         outputSyntaxNode(initValNode);
         return initValNode;
     }
 
-    private SyntaxNode parseFuncDef() {
-        SyntaxNode funcDefNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "FuncDef");
+    private int parseFuncDef() {
+        int joinedNode = joinFunction(false);
+        if (joinedNode != SyntaxTree.NONE) {
+            return joinedNode;
+        }
+        int reusedNode = reuseSubtree(SyntaxKind.FUNC_DEF);
+        if (reusedNode != SyntaxTree.NONE) {
+            return reusedNode;
+        }
+
+        int funcDefNode = tree.addNonTerminal(SyntaxKind.FUNC_DEF);
+        beginSubtree(funcDefNode);
 
-        SyntaxNode funcTypeNode = parseFuncType();
-        funcDefNode.addChild(funcTypeNode);
+        int funcTypeNode = parseFuncType();
+        tree.addChild(funcDefNode, funcTypeNode);
 
         Token idenToken = consumeToken(TokenType.IDENFR);
-        SyntaxNode idenNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, idenToken);
-        funcDefNode.addChild(idenNode);
+        int idenNode = terminalNode();
+        tree.addChild(funcDefNode, idenNode);
         outputToken(idenToken);
 
         Token lParentToken = consumeToken(TokenType.LPARENT);
-        SyntaxNode lParentNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lParentToken);
-        funcDefNode.addChild(lParentNode);
+        int lParentNode = terminalNode();
+        tree.addChild(funcDefNode, lParentNode);
         outputToken(lParentToken);
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.INTTK)) {
-            SyntaxNode funcFParamsNode = parseFuncFParams();
-            funcDefNode.addChild(funcFParamsNode);
+        if (tokens.hasToken(0) && matchToken(TokenType.INTTK)) {
+            int funcFParamsNode = parseFuncFParams();
+            tree.addChild(funcDefNode, funcFParamsNode);
         }
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.RPARENT)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.RPARENT)) {
             Token rParentToken = consumeToken(TokenType.RPARENT);
-            SyntaxNode rParentNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rParentToken);
-            funcDefNode.addChild(rParentNode);
+            int rParentNode = terminalNode();
+            tree.addChild(funcDefNode, rParentNode);
             outputToken(rParentToken);
         } else {
-            errorHandler.reportError(getTokenLine(), "j");
+            reportError("j");
         }
 
-        SyntaxNode blockNode = parseBlock();
-        funcDefNode.addChild(blockNode);
+        int blockNode = parseBlock();
+        tree.addChild(funcDefNode, blockNode);
 
         outputSyntaxNode(funcDefNode);
+        endSubtree(funcDefNode);
         return funcDefNode;
     }
 
-    private SyntaxNode parseFuncType() {
-        SyntaxNode funcTypeNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "FuncType");
+    private int parseFuncType() {
+        int funcTypeNode = tree.addNonTerminal(SyntaxKind.FUNC_TYPE);
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.INTTK)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.INTTK)) {
             Token intToken = consumeToken(TokenType.INTTK);
-            SyntaxNode intNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, intToken);
-            funcTypeNode.addChild(intNode);
+            int intNode = terminalNode();
+            tree.addChild(funcTypeNode, intNode);
             outputToken(intToken);
         } else {
             Token voidToken = consumeToken(TokenType.VOIDTK);
-            SyntaxNode voidNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, voidToken);
-            funcTypeNode.addChild(voidNode);
+            int voidNode = terminalNode();
+            tree.addChild(funcTypeNode, voidNode);
             outputToken(voidToken);
         }
 
@@ -661,50 +1007,50 @@ public class Parser {
         return funcTypeNode;
     }
 
-    private SyntaxNode parseFuncFParams() {
-        SyntaxNode funcFParamsNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "FuncFParams");
+    private int parseFuncFParams() {
+        int funcFParamsNode = tree.addNonTerminal(SyntaxKind.FUNC_FPARAMS);
 
-        SyntaxNode funcFParamNode = parseFuncFParam();
-        funcFParamsNode.addChild(funcFParamNode);
+        int funcFParamNode = parseFuncFParam();
+        tree.addChild(funcFParamsNode, funcFParamNode);
 
-        while (tokenIndex < tokens.size() && matchToken(TokenType.COMMA)) {
+        while (tokens.hasToken(0) && matchToken(TokenType.COMMA)) {
             Token commaToken = consumeToken(TokenType.COMMA);
-            SyntaxNode commaNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, commaToken);
-            funcFParamsNode.addChild(commaNode);
+            int commaNode = terminalNode();
+            tree.addChild(funcFParamsNode, commaNode);
             outputToken(commaToken);
 
-            SyntaxNode nextFuncFParamNode = parseFuncFParam();
-            funcFParamsNode.addChild(nextFuncFParamNode);
+            int nextFuncFParamNode = parseFuncFParam();
+            tree.addChild(funcFParamsNode, nextFuncFParamNode);
         }
 
         outputSyntaxNode(funcFParamsNode);
         return funcFParamsNode;
     }
 
-    private SyntaxNode parseFuncFParam() {
-        SyntaxNode FuncFParamNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "FuncFParam");
+    private int parseFuncFParam() {
+        int FuncFParamNode = tree.addNonTerminal(SyntaxKind.FUNC_FPARAM);
 
-        SyntaxNode bTypeNode = parseBType();
-        FuncFParamNode.addChild(bTypeNode);
+        int bTypeNode = parseBType();
+        tree.addChild(FuncFParamNode, bTypeNode);
 
         Token idenToken = consumeToken(TokenType.IDENFR);
-        SyntaxNode idenNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, idenToken);
-        FuncFParamNode.addChild(idenNode);
+        int idenNode = terminalNode();
+        tree.addChild(FuncFParamNode, idenNode);
         outputToken(idenToken);
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.LBRACK)) {
+        if (tokens.hasToken(0) && matchToken(TokenType.LBRACK)) {
             Token lBrackToken = consumeToken(TokenType.LBRACK);
-            SyntaxNode lBrackNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lBrackToken);
-            FuncFParamNode.addChild(lBrackNode);
+            int lBrackNode = terminalNode();
+            tree.addChild(FuncFParamNode, lBrackNode);
             outputToken(lBrackToken);
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.RBRACK)) {
+            if (tokens.hasToken(0) && matchToken(TokenType.RBRACK)) {
                 Token rBrackToken = consumeToken(TokenType.RBRACK);
-                SyntaxNode rBrackNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rBrackToken);
-                FuncFParamNode.addChild(rBrackNode);
+                int rBrackNode = terminalNode();
+                tree.addChild(FuncFParamNode, rBrackNode);
                 outputToken(rBrackToken);
             } else {
-                errorHandler.reportError(getTokenLine(), "k");
+                reportError("k");
             }
         }
 
@@ -712,452 +1058,1049 @@ public class Parser {
         return FuncFParamNode;
     }
 
-    private SyntaxNode parseBlock() {
-        SyntaxNode blockNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "Block");
+    private int parseBlock() {
+        if (explicitStack) {
+            return run(BLOCK, SyntaxTree.NONE);
+        }
+        int reusedNode = reuseSubtree(SyntaxKind.BLOCK);
+        if (reusedNode != SyntaxTree.NONE) {
+            return reusedNode;
+        }
+        int blockNode = tree.addNonTerminal(SyntaxKind.BLOCK);
+        beginSubtree(blockNode);
 
         Token lBraceToken = consumeToken(TokenType.LBRACE);
-        SyntaxNode lBraceNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lBraceToken);
-        blockNode.addChild(lBraceNode);
+        int lBraceNode = terminalNode();
+        tree.addChild(blockNode, lBraceNode);
         outputToken(lBraceToken);
 
-        while (tokenIndex < tokens.size() && !matchToken(TokenType.RBRACE)) {
-            SyntaxNode blockItemNode = parseBlockItem();
-            blockNode.addChild(blockItemNode);
+        while (tokens.hasToken(0) && !matchToken(TokenType.RBRACE)) {
+            int start = tokens.getPreviousIndex();
+            int blockItemNode = parseBlockItem();
+            tree.addChild(blockNode, blockItemNode);
+            checkTask(start);
         }
 
         Token rBraceToken = consumeToken(TokenType.RBRACE);
-        SyntaxNode rBraceNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rBraceToken);
-        blockNode.addChild(rBraceNode);
+        int rBraceNode = terminalNode();
+        tree.addChild(blockNode, rBraceNode);
         outputToken(rBraceToken);
 
         outputSyntaxNode(blockNode);
+        endSubtree(blockNode);
         return blockNode;
     }
 
-    private SyntaxNode parseBlockItem() {
-        SyntaxNode blockItemNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "BlockItem");
+    private int parseBlockItem() {
+        int blockItemNode = tree.addNonTerminal(SyntaxKind.BLOCK_ITEM);
+        int start = tokens.getPreviousIndex();
+        int base = stackTop;
 
-        if (tokenIndex < tokens.size() && (matchToken(TokenType.CONSTTK) || matchToken(TokenType.INTTK) || matchToken(TokenType.STATICTK))) {
-            SyntaxNode declNode = parseDecl();
-            blockItemNode.addChild(declNode);
-        } else {
-            SyntaxNode stmtNode = parseStmt();
-            blockItemNode.addChild(stmtNode);
+        try {
+            if (matchAny(TokenSets.DECL_FIRST)) {
+                int declNode = parseDecl();
+                tree.addChild(blockItemNode, declNode);
+            } else {
+                int stmtNode = parseStmt();
+                tree.addChild(blockItemNode, stmtNode);
+            }
+        } catch (SyntaxError e) {
+            stackTop = base;
+            synchronize();
         }
+        requireProgress(start);
 
         outputSyntaxNode(blockItemNode);
         return blockItemNode;
     }
 
-    private SyntaxNode parseStmt() {
-        SyntaxNode stmtNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "Stmt");
-
-        if (tokenIndex < tokens.size() && matchToken(TokenType.IFTK)) {
-            Token ifToken = consumeToken(TokenType.IFTK);
-            SyntaxNode ifNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, ifToken);
-            stmtNode.addChild(ifNode);
-            outputToken(ifToken);
+    private int parseStmt() {
+        int stmtNode = tree.addNonTerminal(SyntaxKind.STMT);
+
+        switch (stmtBranch()) {
+            case TokenSets.BRANCH_IF: {
+                Token ifToken = consumeToken(TokenType.IFTK);
+                int ifNode = terminalNode();
+                tree.addChild(stmtNode, ifNode);
+                outputToken(ifToken);
+
+                Token lParentToken = consumeToken(TokenType.LPARENT);
+                int lParentNode = terminalNode();
+                tree.addChild(stmtNode, lParentNode);
+                outputToken(lParentToken);
+
+                int condNode = parseCond();
+                tree.addChild(stmtNode, condNode);
+
+                if (tokens.hasToken(0) && matchToken(TokenType.RPARENT)) {
+                    Token rParentToken = consumeToken(TokenType.RPARENT);
+                    int rParentNode = terminalNode();
+                    tree.addChild(stmtNode, rParentNode);
+                    outputToken(rParentToken);
+                } else {
+                    reportError("j");
+                }
 
-            Token lParentToken = consumeToken(TokenType.LPARENT);
-            SyntaxNode lParentNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lParentToken);
-            stmtNode.addChild(lParentNode);
-            outputToken(lParentToken);
+                int nextStmtNode = parseStmt();
+                tree.addChild(stmtNode, nextStmtNode);
 
-            SyntaxNode condNode = parseCond();
-            stmtNode.addChild(condNode);
+                if (tokens.hasToken(0) && matchToken(TokenType.ELSETK)) {
+                    Token elseToken = consumeToken(TokenType.ELSETK);
+                    int elseNode = terminalNode();
+                    tree.addChild(stmtNode, elseNode);
+                    outputToken(elseToken);
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.RPARENT)) {
-                Token rParentToken = consumeToken(TokenType.RPARENT);
-                SyntaxNode rParentNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rParentToken);
-                stmtNode.addChild(rParentNode);
-                outputToken(rParentToken);
-            } else {
-                errorHandler.reportError(getTokenLine(), "j");
+                    int anotherStmtNode = parseStmt();
+                    tree.addChild(stmtNode, anotherStmtNode);
+                }
+                break;
             }
+            case TokenSets.BRANCH_FOR: {
+                Token forToken = consumeToken(TokenType.FORTK);
+                int forNode = terminalNode();
+                tree.addChild(stmtNode, forNode);
+                outputToken(forToken);
+
+                Token lParentToken = consumeToken(TokenType.LPARENT);
+                int lParentNode = terminalNode();
+                tree.addChild(stmtNode, lParentNode);
+                outputToken(lParentToken);
+
+                if (tokens.hasToken(0) && matchToken(TokenType.IDENFR)) {
+                    int forStmtNode = parseForStmt();
+                    tree.addChild(stmtNode, forStmtNode);
+                }
 
-            SyntaxNode nextStmtNode = parseStmt();
-            stmtNode.addChild(nextStmtNode);
-
-            if (tokenIndex < tokens.size() && matchToken(TokenType.ELSETK)) {
-                Token elseToken = consumeToken(TokenType.ELSETK);
-                SyntaxNode elseNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, elseToken);
-                stmtNode.addChild(elseNode);
-                outputToken(elseToken);
+                Token semicnToken = consumeToken(TokenType.SEMICN);
+                int semicNode = terminalNode();
+                tree.addChild(stmtNode, semicNode);
+                outputToken(semicnToken);
 
-                SyntaxNode anotherStmtNode = parseStmt();
-                stmtNode.addChild(anotherStmtNode);
-            }
-        } else if (tokenIndex < tokens.size() && matchToken(TokenType.FORTK)) {
-            Token forToken = consumeToken(TokenType.FORTK);
-            SyntaxNode forNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, forToken);
-            stmtNode.addChild(forNode);
-            outputToken(forToken);
+                if (tokens.hasToken(0) && !(matchToken(TokenType.SEMICN))) {
+                    int condNode = parseCond();
+                    tree.addChild(stmtNode, condNode);
+                }
 
-            Token lParentToken = consumeToken(TokenType.LPARENT);
-            SyntaxNode lParentNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lParentToken);
-            stmtNode.addChild(lParentNode);
-            outputToken(lParentToken);
+                Token nextsemicnToken = consumeToken(TokenType.SEMICN);
+                int nextSemicnNode = terminalNode();
+                tree.addChild(stmtNode, nextSemicnNode);
+                outputToken(nextsemicnToken);
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.IDENFR)) {
-                SyntaxNode forStmtNode = parseForStmt();
-                stmtNode.addChild(forStmtNode);
-            }
+                if (tokens.hasToken(0) && matchToken(TokenType.IDENFR)) {
+                    int forStmtNode = parseForStmt();
+                    tree.addChild(stmtNode, forStmtNode);
+                }
 
-            Token semicnToken = consumeToken(TokenType.SEMICN);
-            SyntaxNode semicNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, semicnToken);
-            stmtNode.addChild(semicNode);
-            outputToken(semicnToken);
+                if (tokens.hasToken(0) && matchToken(TokenType.RPARENT)) {
+                    Token rParentToken = consumeToken(TokenType.RPARENT);
+                    int rParentNode = terminalNode();
+                    tree.addChild(stmtNode, rParentNode);
+                    outputToken(rParentToken);
+                } else {
+                    reportError("j");
+                }
 
-            if (tokenIndex < tokens.size() && !(matchToken(TokenType.SEMICN))) {
-                SyntaxNode condNode = parseCond();
-                stmtNode.addChild(condNode);
+                int StmtNode = parseStmt();
+                tree.addChild(stmtNode, StmtNode);
+                break;
             }
-
-            Token nextsemicnToken = consumeToken(TokenType.SEMICN);
-            SyntaxNode nextSemicnNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, nextsemicnToken);
-            stmtNode.addChild(nextSemicnNode);
-            outputToken(nextsemicnToken);
-
-            if (tokenIndex < tokens.size() && matchToken(TokenType.IDENFR)) {
-                SyntaxNode forStmtNode = parseForStmt();
-                stmtNode.addChild(forStmtNode);
+            case TokenSets.BRANCH_BREAK: {
+                Token breakToken = consumeToken(TokenType.BREAKTK);
+                int breakNode = terminalNode();
+                tree.addChild(stmtNode, breakNode);
+                outputToken(breakToken);
+
+                if (tokens.hasToken(0) && matchToken(TokenType.SEMICN)) {
+                    Token semicnToken = consumeToken(TokenType.SEMICN);
+                    int semicNode = terminalNode();
+                    tree.addChild(stmtNode, semicNode);
+                    outputToken(semicnToken);
+                } else {
+                    reportError("i");
+                }
+                break;
             }
+            case TokenSets.BRANCH_CONTINUE: {
+                Token continueToken = consumeToken(TokenType.CONTINUETK);
+                int continueNode = terminalNode();
+                tree.addChild(stmtNode, continueNode);
+                outputToken(continueToken);
+
+                if (tokens.hasToken(0) && matchToken(TokenType.SEMICN)) {
+                    Token semicnToken = consumeToken(TokenType.SEMICN);
+                    int semicNode = terminalNode();
+                    tree.addChild(stmtNode, semicNode);
+                    outputToken(semicnToken);
+                } else {
+                    reportError("i");
+                }
+                break;
+            }
+            case TokenSets.BRANCH_RETURN: {
+                Token returnToken = consumeToken(TokenType.RETURNTK);
+                int returnNode = terminalNode();
+                tree.addChild(stmtNode, returnNode);
+                outputToken(returnToken);
+
+                if (matchAny(TokenSets.EXP_FIRST)) {
+                    int expNode = parseExp();
+                    tree.addChild(stmtNode, expNode);
+                }
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.RPARENT)) {
-                Token rParentToken = consumeToken(TokenType.RPARENT);
-                SyntaxNode rParentNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rParentToken);
-                stmtNode.addChild(rParentNode);
-                outputToken(rParentToken);
-            } else {
-                errorHandler.reportError(getTokenLine(), "j");
+                if (tokens.hasToken(0) && matchToken(TokenType.SEMICN)) {
+                    Token semicnToken = consumeToken(TokenType.SEMICN);
+                    int semicNode = terminalNode();
+                    tree.addChild(stmtNode, semicNode);
+                    outputToken(semicnToken);
+                } else {
+                    reportError("i");
+                }
+                break;
             }
+            case TokenSets.BRANCH_PRINTF: {
+                Token printToken = consumeToken(TokenType.PRINTFTK);
+                int printNode = terminalNode();
+                tree.addChild(stmtNode, printNode);
+                outputToken(printToken);
+
+                Token lParentToken = consumeToken(TokenType.LPARENT);
+                int lParentNode = terminalNode();
+                tree.addChild(stmtNode, lParentNode);
+                outputToken(lParentToken);
+
+                Token stringConstToken = consumeToken(TokenType.STRCON);
+                int stringConstNode = terminalNode();
+                tree.addChild(stmtNode, stringConstNode);
+                outputToken(stringConstToken);
+
+                while (tokens.hasToken(0) && matchToken(TokenType.COMMA)) {
+                    Token commaToken = consumeToken(TokenType.COMMA);
+                    int commaNode = terminalNode();
+                    tree.addChild(stmtNode, commaNode);
+                    outputToken(commaToken);
 
-            SyntaxNode StmtNode = parseStmt();
-            stmtNode.addChild(StmtNode);
-        } else if (tokenIndex < tokens.size() && matchToken(TokenType.BREAKTK)) {
-            Token breakToken = consumeToken(TokenType.BREAKTK);
-            SyntaxNode breakNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, breakToken);
-            stmtNode.addChild(breakNode);
-            outputToken(breakToken);
+                    int expNode = parseExp();
+                    tree.addChild(stmtNode, expNode);
+                }
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.SEMICN)) {
-                Token semicnToken = consumeToken(TokenType.SEMICN);
-                SyntaxNode semicNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, semicnToken);
-                stmtNode.addChild(semicNode);
-                outputToken(semicnToken);
-            } else {
-                errorHandler.reportError(getTokenLine(), "i");
-            }
-        } else if (tokenIndex < tokens.size() && matchToken(TokenType.CONTINUETK)) {
-            Token continueToken = consumeToken(TokenType.CONTINUETK);
-            SyntaxNode continueNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, continueToken);
-            stmtNode.addChild(continueNode);
-            outputToken(continueToken);
+                if (tokens.hasToken(0) && matchToken(TokenType.RPARENT)) {
+                    Token rParentToken = consumeToken(TokenType.RPARENT);
+                    int rParentNode = terminalNode();
+                    tree.addChild(stmtNode, rParentNode);
+                    outputToken(rParentToken);
+                } else {
+                    reportError("j");
+                }
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.SEMICN)) {
-                Token semicnToken = consumeToken(TokenType.SEMICN);
-                SyntaxNode semicNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, semicnToken);
-                stmtNode.addChild(semicNode);
-                outputToken(semicnToken);
-            } else {
-                errorHandler.reportError(getTokenLine(), "i");
+                if (tokens.hasToken(0) && matchToken(TokenType.SEMICN)) {
+                    Token semicnToken = consumeToken(TokenType.SEMICN);
+                    int semicNode = terminalNode();
+                    tree.addChild(stmtNode, semicNode);
+                    outputToken(semicnToken);
+                } else {
+                    reportError("i");
+                }
+                break;
             }
-        } else if (tokenIndex < tokens.size() && matchToken(TokenType.RETURNTK)) {
-            Token returnToken = consumeToken(TokenType.RETURNTK);
-            SyntaxNode returnNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, returnToken);
-            stmtNode.addChild(returnNode);
-            outputToken(returnToken);
-
-            if (tokenIndex < tokens.size() && (matchToken(TokenType.PLUS) || matchToken(TokenType.MINU) || matchToken(TokenType.NOT) || matchToken(TokenType.IDENFR) || matchToken(TokenType.LPARENT) || matchToken(TokenType.INTCON))) {
-                SyntaxNode expNode = parseExp();
-                stmtNode.addChild(expNode);
+            case TokenSets.BRANCH_BLOCK: {
+                int blockNode = parseBlock();
+                tree.addChild(stmtNode, blockNode);
+                break;
             }
-
-            if (tokenIndex < tokens.size() && matchToken(TokenType.SEMICN)) {
-                Token semicnToken = consumeToken(TokenType.SEMICN);
-                SyntaxNode semicNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, semicnToken);
-                stmtNode.addChild(semicNode);
-                outputToken(semicnToken);
-            } else {
-                errorHandler.reportError(getTokenLine(), "i");
+            default: {
+                if (startsAssign()) {
+                    int lValNode = parseLVal();
+                    tree.addChild(stmtNode, lValNode);
+
+                    Token assignToken = consumeToken(TokenType.ASSIGN);
+                    int assignNode = terminalNode();
+                    tree.addChild(stmtNode, assignNode);
+                    outputToken(assignToken);
+
+                    int expNode = parseExp();
+                    tree.addChild(stmtNode, expNode);
+
+                    if (tokens.hasToken(0) && matchToken(TokenType.SEMICN)) {
+                        Token semicnToken = consumeToken(TokenType.SEMICN);
+                        int semicNode = terminalNode();
+                        tree.addChild(stmtNode, semicNode);
+                        outputToken(semicnToken);
+                    } else {
+                        reportError("i");
+                    }
+                } else {
+                    if (matchAny(TokenSets.EXP_FIRST)) {
+                        int expNode = parseExp();
+                        tree.addChild(stmtNode, expNode);
+                    }
+
+                    if (tokens.hasToken(0) && matchToken(TokenType.SEMICN)) {
+                        Token semicnToken = consumeToken(TokenType.SEMICN);
+                        int semicNode = terminalNode();
+                        tree.addChild(stmtNode, semicNode);
+                        outputToken(semicnToken);
+                    } else {
+                        reportError("i");
+                    }
+                }
+                break;
             }
-        } else if (tokenIndex < tokens.size() && matchToken(TokenType.PRINTFTK)) {
-            Token printToken = consumeToken(TokenType.PRINTFTK);
-            SyntaxNode printNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, printToken);
-            stmtNode.addChild(printNode);
-            outputToken(printToken);
+        }
 
-            Token lParentToken = consumeToken(TokenType.LPARENT);
-            SyntaxNode lParentNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lParentToken);
-            stmtNode.addChild(lParentNode);
-            outputToken(lParentToken);
+        outputSyntaxNode(stmtNode);
+        return stmtNode;
+    }
 
-            Token stringConstToken = consumeToken(TokenType.STRCON);
-            SyntaxNode stringConstNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, stringConstToken);
-            stmtNode.addChild(stringConstNode);
-            outputToken(stringConstToken);
+    private int parseCond() {
+        int condNode = tree.addNonTerminal(SyntaxKind.COND);
 
-            while (tokenIndex < tokens.size() && matchToken(TokenType.COMMA)) {
-                Token commaToken = consumeToken(TokenType.COMMA);
-                SyntaxNode commaNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, commaToken);
-                stmtNode.addChild(commaNode);
-                outputToken(commaToken);
+        int lOrExpNode = parseBinaryExp(BindingPower.LOR);
+        tree.addChild(condNode, lOrExpNode);
 
-                SyntaxNode expNode = parseExp();
-                stmtNode.addChild(expNode);
-            }
+        outputSyntaxNode(condNode);
+        return condNode;
+    }
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.RPARENT)) {
-                Token rParentToken = consumeToken(TokenType.RPARENT);
-                SyntaxNode rParentNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rParentToken);
-                stmtNode.addChild(rParentNode);
-                outputToken(rParentToken);
-            } else {
-                errorHandler.reportError(getTokenLine(), "j");
-            }
+    private int parseForStmt() {
+        int forStmtNode = tree.addNonTerminal(SyntaxKind.FOR_STMT);
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.SEMICN)) {
-                Token semicnToken = consumeToken(TokenType.SEMICN);
-                SyntaxNode semicNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, semicnToken);
-                stmtNode.addChild(semicNode);
-                outputToken(semicnToken);
-            } else {
-                errorHandler.reportError(getTokenLine(), "i");
-            }
-        } else if (tokenIndex < tokens.size() && matchToken(TokenType.LBRACE)) {
-            SyntaxNode blockNode = parseBlock();
-            stmtNode.addChild(blockNode);
-        } else if (tokenIndex + 1 < tokens.size() && (preMatchToken(TokenType.LBRACK) || preMatchToken(TokenType.ASSIGN))) {
-            SyntaxNode lValNode = parseLVal();
-            stmtNode.addChild(lValNode);
+        int lValNode = parseLVal();
+        tree.addChild(forStmtNode, lValNode);
 
-            Token assignToken = consumeToken(TokenType.ASSIGN);
-            SyntaxNode assignNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, assignToken);
-            stmtNode.addChild(assignNode);
-            outputToken(assignToken);
+        Token assignToken = consumeToken(TokenType.ASSIGN);
+        int assignNode = terminalNode();
+        tree.addChild(forStmtNode, assignNode);
+        outputToken(assignToken);
 
-            SyntaxNode expNode = parseExp();
-            stmtNode.addChild(expNode);
+        int expNode = parseExp();
+        tree.addChild(forStmtNode, expNode);
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.SEMICN)) {
-                Token semicnToken = consumeToken(TokenType.SEMICN);
-                SyntaxNode semicNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, semicnToken);
-                stmtNode.addChild(semicNode);
-                outputToken(semicnToken);
-            } else {
-                errorHandler.reportError(getTokenLine(), "i");
-            }
+        while (tokens.hasToken(0) && matchToken(TokenType.COMMA)) {
+            Token commaToken = consumeToken(TokenType.COMMA);
+            int commaNode = terminalNode();
+            tree.addChild(forStmtNode, commaNode);
+            outputToken(commaToken);
+
+            int nextLValNode = parseLVal();
+            tree.addChild(forStmtNode, nextLValNode);
+
+            Token nextAssignToken = consumeToken(TokenType.ASSIGN);
+            int nextAssignNode = terminalNode();
+            tree.addChild(forStmtNode, nextAssignNode);
+            outputToken(nextAssignToken);
+
+            int nextExpNode = parseExp();
+            tree.addChild(forStmtNode, nextExpNode);
+        }
+
+        outputSyntaxNode(forStmtNode);
+        return forStmtNode;
+    }
+
+    private int parseMainFuncDef() {
+        int joinedNode = joinFunction(true);
+        if (joinedNode != SyntaxTree.NONE) {
+            return joinedNode;
+        }
+
+        int mainFuncDefNode = tree.addNonTerminal(SyntaxKind.MAIN_FUNC_DEF);
+
+        Token intToken = consumeToken(TokenType.INTTK);
+        int intNode = terminalNode();
+        tree.addChild(mainFuncDefNode, intNode);
+        outputToken(intToken);
+
+        Token mainToken = consumeToken(TokenType.MAINTK);
+        int mainNode = terminalNode();
+        tree.addChild(mainFuncDefNode, mainNode);
+        outputToken(mainToken);
+
+        Token lParenToken = consumeToken(TokenType.LPARENT);
+        int lParenNode = terminalNode();
+        tree.addChild(mainFuncDefNode, lParenNode);
+        outputToken(lParenToken);
+
+        if (tokens.hasToken(0) && matchToken(TokenType.RPARENT)) {
+            Token rParenToken = consumeToken(TokenType.RPARENT);
+            int rParenNode = terminalNode();
+            tree.addChild(mainFuncDefNode, rParenNode);
+            outputToken(rParenToken);
         } else {
-            if (tokenIndex < tokens.size() && (matchToken(TokenType.PLUS) || matchToken(TokenType.MINU) || matchToken(TokenType.NOT) || matchToken(TokenType.IDENFR) || matchToken(TokenType.LPARENT) || matchToken(TokenType.INTCON))) {
-                SyntaxNode expNode = parseExp();
-                stmtNode.addChild(expNode);
-            }
+            reportError("j");
+        }
 
-            if (tokenIndex < tokens.size() && matchToken(TokenType.SEMICN)) {
-                Token semicnToken = consumeToken(TokenType.SEMICN);
-                SyntaxNode semicNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, semicnToken);
-                stmtNode.addChild(semicNode);
-                outputToken(semicnToken);
-            } else {
-                errorHandler.reportError(getTokenLine(), "i");
-            }
+        int blockNode = parseBlock();
+        tree.addChild(mainFuncDefNode, blockNode);
+
+        outputSyntaxNode(mainFuncDefNode);
+        return mainFuncDefNode;
+    }
+
+    /**
+     * FunctionTask 在独立的 Parser 中从起点解析一个函数, 返回函数节点
+     */
+    int parseFunction(boolean mainFunction) {
+        try {
+            return mainFunction ? parseMainFuncDef() : parseFuncDef();
+        } catch (TaskAbandoned e) {
+            return SyntaxTree.NONE;
         }
+    }
 
-        outputSyntaxNode(stmtNode);
-        return stmtNode;
+    void setTask(FunctionTask task) {
+        this.task = task;
     }
 
-    private SyntaxNode parseCond() {
-        SyntaxNode condNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "Cond");
+    /**
+     * 任务收到停止请求或已越过预测的结束位置时放弃解析: 这样的结果不会被采用,
+     * 不放弃的话非恢复模式下出错的函数可能一直解析下去
+     */
+    private void checkTask() {
+        if (task != null && (task.isStopRequested() || tokens.getPreviousIndex() > task.getEnd())) {
+            throw TaskAbandoned.INSTANCE;
+        }
+    }
 
-        SyntaxNode lOrExpNode = parseLOrExp();
-        condNode.addChild(lOrExpNode);
+    /**
+     * 同上, 另外从 start 之后开始的 BlockItem 没有读入任何单词时也放弃
+     */
+    private void checkTask(int start) {
+        if (task != null && tokens.getPreviousIndex() == start) {
+            throw TaskAbandoned.INSTANCE;
+        }
+        checkTask();
+    }
 
-        outputSyntaxNode(condNode);
-        return condNode;
+    /**
+     * 最近一个被取出单词的下标, 用于校验函数的结束位置
+     */
+    int getPreviousIndex() {
+        return tokens.getPreviousIndex();
     }
 
-    private SyntaxNode parseLOrExp() {
-        SyntaxNode lOrExpNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "LOrExp");
+    void setSession(IncrementalParser session) {
+        this.session = session;
+    }
 
-        SyntaxNode lAndExpNode = parseLAndExp();
-        lOrExpNode.addChild(lAndExpNode);
-        outputSyntaxNode(lOrExpNode);
+    /**
+     * 不生成节点直接跳过被复用子树的单词
+     */
+    void skipTokens(int count) {
+        tokens.skip(count);
+    }
 
-        while (tokenIndex < tokens.size() && matchToken(TokenType.OR)) {
-            Token orToken = consumeToken(TokenType.OR);
-            SyntaxNode orNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, orToken);
-            lOrExpNode.addChild(orNode);
-            if (orToken.getValue().equals("|")) {
-                errorHandler.reportError(getTokenLine(), "a");
+    boolean isCompactExpressions() { return compactExpressions; }
+    boolean isExplicitStack() { return explicitStack; }
+    boolean isRecovery() { return recovery; }
+
+    /**
+     * 从当前位置开始按大括号配对预测各函数的单词范围, 每个函数交给 functionPool 上的一个任务.
+     * 预测只决定并行的粒度, 是否采用由 joinFunction 按顺序解析的实际位置校验
+     */
+    private void forkFunctions() {
+        TokenBuffer buffer = tokens.getBuffer();
+        List<FunctionTask> tasks = new ArrayList<>();
+        int start = tokens.getPreviousIndex() + 1;
+        while (start < buffer.size()) {
+            boolean mainFunction = !isFuncDefStart(buffer, start);
+            int end = findFunctionEnd(buffer, start);
+            if (end < 0) {
+                break;
             }
-            outputToken(orToken);
+            tasks.add(new FunctionTask(this, buffer, start, end, mainFunction));
+            if (mainFunction) {
+                break;
+            }
+            start = end + 1;
+        }
+        functionTasks = tasks.toArray(new FunctionTask[0]);
+        nextFunctionTask = 0;
+        for (FunctionTask task : functionTasks) {
+            functionPool.execute(task);
+        }
+    }
+
+    /**
+     * 与 parseCompUnit 中 FuncDef 循环的条件相同
+     */
+    private static boolean isFuncDefStart(TokenBuffer buffer, int start) {
+        int type = buffer.getTypeOrdinal(start);
+        return type == TokenType.VOIDTK.ordinal()
+                || (type == TokenType.INTTK.ordinal() && start + 2 < buffer.size()
+                && buffer.getTypeOrdinal(start + 1) == TokenType.IDENFR.ordinal()
+                && buffer.getTypeOrdinal(start + 2) == TokenType.LPARENT.ordinal());
+    }
+
+    /**
+     * start 之后第一个 { 对应的 } 的下标, 括号不配对时返回 -1
+     */
+    private static int findFunctionEnd(TokenBuffer buffer, int start) {
+        int depth = 0;
+        for (int i = start; i < buffer.size(); i++) {
+            int type = buffer.getTypeOrdinal(i);
+            if (type == TokenType.LBRACE.ordinal()) {
+                depth++;
+            } else if (type == TokenType.RBRACE.ordinal() && depth > 0 && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
 
-            SyntaxNode nextLAndExpNode = parseLAndExp();
-            lOrExpNode.addChild(nextLAndExpNode);
-            outputSyntaxNode(lOrExpNode);
+    /**
+     * 当前位置正好是下一个任务的起点, 函数种类相同且任务恰好解析到预测的结束位置时,
+     * 按顺序转发它的输出和错误, 把它的节点追加到语法树并跳过这些单词; 否则返回 NONE, 由调用方顺序解析
+     */
+    private int joinFunction(boolean mainFunction) {
+        if (functionTasks == null) {
+            return SyntaxTree.NONE;
+        }
+        int current = tokens.getPreviousIndex() + 1;
+        while (nextFunctionTask < functionTasks.length && functionTasks[nextFunctionTask].getStart() < current) {
+            functionTasks[nextFunctionTask].requestStop();
+            functionTasks[nextFunctionTask++].cancel(false);
+        }
+        if (nextFunctionTask == functionTasks.length) {
+            return SyntaxTree.NONE;
+        }
+        FunctionTask task = functionTasks[nextFunctionTask];
+        if (task.getStart() != current || task.isMainFunction() != mainFunction) {
+            return SyntaxTree.NONE;
+        }
+        nextFunctionTask++;
+        task.quietlyJoin();
+        if (!task.isCompletedNormally() || task.getLastIndex() != task.getEnd()) {
+            return SyntaxTree.NONE;
         }
 
-        return lOrExpNode;
+        try {
+            task.getEvents().replayTo(sink, tokens.getBuffer());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        errorHandler.addAll(task.getErrors());
+        tokens.skip(task.getEnd() - current + 1);
+        return tree.append(task.getTree(), task.getRoot());
     }
 
-    private SyntaxNode parseLAndExp() {
-        SyntaxNode lAndExpNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "LAndExp");
+    private int reuseSubtree(SyntaxKind kind) {
+        return session == null ? SyntaxTree.NONE : session.reuse(this, kind);
+    }
 
-        SyntaxNode eqExpNode = parseEqExp();
-        lAndExpNode.addChild(eqExpNode);
-        outputSyntaxNode(lAndExpNode);
+    private void beginSubtree(int node) {
+        if (session != null) {
+            session.begin(this, node);
+        }
+    }
 
-        while (tokenIndex < tokens.size() && matchToken(TokenType.AND)) {
-            Token andToken = consumeToken(TokenType.AND);
-            SyntaxNode andNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, andToken);
-            lAndExpNode.addChild(andNode);
-            if (andToken.getValue().equals("&")) {
-                errorHandler.reportError(getTokenLine(), "a");
+    private void endSubtree(int node) {
+        if (session != null) {
+            session.end(this, node);
+        }
+    }
+
+    /**
+     * 停止尚未合并的任务, 并等待全部任务结束, 解析返回后不再有任务占用线程和内存
+     */
+    private void cancelFunctions() {
+        if (functionTasks == null) {
+            return;
+        }
+        for (int i = nextFunctionTask; i < functionTasks.length; i++) {
+            functionTasks[i].requestStop();
+            functionTasks[i].cancel(false);
+        }
+        for (FunctionTask functionTask : functionTasks) {
+            functionTask.quietlyJoin();
+        }
+        functionTasks = null;
+    }
+
+    /**
+     * 显式栈模式的驱动循环: 压入 routine 的栈帧, 反复执行栈顶帧直到它返回.
+     * 每个栈帧在调用子例程前记下返回后继续的状态, 子例程的结果通过 result 传回;
+     * 声明中的表达式会重入本循环, 但此时只在当前栈顶之上执行
+     */
+    private int run(int routine, int argument) {
+        int base = frameTop;
+        int stackBase = stackTop;
+        call(routine, argument);
+        while (frameTop > base) {
+            checkTask();
+            int frame = frameTop - FRAME;
+            try {
+                switch (frames[frame]) {
+                    case BLOCK: stepBlock(frame); break;
+                    case BLOCK_ITEM: stepBlockItem(frame); break;
+                    case STMT: stepStmt(frame); break;
+                    case FOR_STMT: stepForStmt(frame); break;
+                    case COND: stepWrapped(frame, SyntaxKind.COND, BindingPower.LOR); break;
+                    case EXP: stepWrapped(frame, SyntaxKind.EXP, BindingPower.ADD); break;
+                    case CONST_EXP: stepWrapped(frame, SyntaxKind.CONST_EXP, BindingPower.ADD); break;
+                    case BINARY_EXP: stepBinaryExp(frame); break;
+                    case UNARY_EXP: stepUnaryExp(frame); break;
+                    case PRIMARY_EXP: stepPrimaryExp(frame); break;
+                    case LVAL: stepLVal(frame); break;
+                    default: stepFuncRParams(frame); break;
+                }
+            } catch (SyntaxError e) {
+                recover(base, stackBase, e);
             }
-            outputToken(andToken);
+        }
+        return result;
+    }
+
+    /**
+     * 恢复模式下退回 base 之上最近的 BlockItem 栈帧, 同步后结束它; 没有时交给外层.
+     * BlockItem 开始时没有未完成的表达式, 共享栈的高度与本循环开始时相同
+     */
+    private void recover(int base, int stackBase, SyntaxError e) {
+        int frame = frameTop - FRAME;
+        while (frame >= base && frames[frame] != BLOCK_ITEM) {
+            frame -= FRAME;
+        }
+        stackTop = stackBase;
+        if (frame < base) {
+            frameTop = base;
+            throw e;
+        }
+        frameTop = frame + FRAME;
+        synchronize();
+        requireProgress(frames[frame + 3]);
+        finish(frames[frame + 2]);
+    }
 
-            SyntaxNode nextEaExpNode = parseEqExp();
-            lAndExpNode.addChild(nextEaExpNode);
-            outputSyntaxNode(lAndExpNode);
+    private void call(int routine, int argument) {
+        if (frameTop + FRAME > frames.length) {
+            frames = Arrays.copyOf(frames, frames.length * 2);
         }
+        frames[frameTop] = routine;
+        frames[frameTop + 1] = 0;
+        frames[frameTop + 2] = SyntaxTree.NONE;
+        frames[frameTop + 3] = argument;
+        frameTop += FRAME;
+    }
 
-        return lAndExpNode;
+    /**
+     * 当前帧在子例程返回后从 state 继续
+     */
+    private void callThen(int frame, int state, int routine, int argument) {
+        frames[frame + 1] = state;
+        call(routine, argument);
     }
 
-    private SyntaxNode parseEqExp() {
-        SyntaxNode eqExpNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "EqExp");
+    private void ret(int node) {
+        result = node;
+        frameTop -= FRAME;
+    }
 
-        SyntaxNode relExpNode = parseRelExp();
-        eqExpNode.addChild(relExpNode);
-        outputSyntaxNode(eqExpNode);
+    private void finish(int node) {
+        outputSyntaxNode(node);
+        ret(node);
+    }
 
-        while (tokenIndex < tokens.size() && (matchToken(TokenType.EQL) || matchToken(TokenType.NEQ))) {
-            if (matchToken(TokenType.EQL)) {
-                Token eqlToken = consumeToken(TokenType.EQL);
-                SyntaxNode eqlNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, eqlToken);
-                eqExpNode.addChild(eqlNode);
-                outputToken(eqlToken);
-            } else {
-                Token neqToken = consumeToken(TokenType.NEQ);
-                SyntaxNode neqNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, neqToken);
-                eqExpNode.addChild(neqNode);
-                outputToken(neqToken);
-            }
+    private void addToken(int parent, TokenType type) {
+        Token token = consumeToken(type);
+        tree.addChild(parent, terminalNode());
+        outputToken(token);
+    }
 
-            SyntaxNode nextRelExpNode = parseRelExp();
-            eqExpNode.addChild(nextRelExpNode);
-            outputSyntaxNode(eqExpNode);
-        }
-
-        return eqExpNode;
-    }
-
-    private SyntaxNode parseRelExp() {
-        SyntaxNode relExpNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "RelExp");
-
-        SyntaxNode addExpNode = parseAddExp();
-        relExpNode.addChild(addExpNode);
-        outputSyntaxNode(relExpNode);
-
-        while (tokenIndex < tokens.size() && (matchToken(TokenType.LSS) || matchToken(TokenType.GRE) || matchToken(TokenType.LEQ) || matchToken(TokenType.GEQ))) {
-            if (matchToken(TokenType.LSS)) {
-                Token lssToken = consumeToken(TokenType.LSS);
-                SyntaxNode lssNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lssToken);
-                relExpNode.addChild(lssNode);
-                outputToken(lssToken);
-            } else if (matchToken(TokenType.GRE)) {
-                Token greToken = consumeToken(TokenType.GRE);
-                SyntaxNode greNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, greToken);
-                relExpNode.addChild(greNode);
-                outputToken(greToken);
-            } else if (matchToken(TokenType.LEQ)) {
-                Token leqToken = consumeToken(TokenType.LEQ);
-                SyntaxNode leqNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, leqToken);
-                relExpNode.addChild(leqNode);
-                outputToken(leqToken);
-            } else {
-                Token geqToken = consumeToken(TokenType.GEQ);
-                SyntaxNode geqNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, geqToken);
-                relExpNode.addChild(geqNode);
-                outputToken(geqToken);
+    private void expectToken(int parent, TokenType type, String errorCode) {
+        if (tokens.hasToken(0) && matchToken(type)) {
+            addToken(parent, type);
+        } else {
+            reportError(errorCode);
+        }
+    }
+
+    private boolean startsExp() {
+        return matchAny(TokenSets.EXP_FIRST);
+    }
+
+    private void stepBlock(int frame) {
+        int blockNode;
+        if (frames[frame + 1] == 0) {
+            int reusedNode = reuseSubtree(SyntaxKind.BLOCK);
+            if (reusedNode != SyntaxTree.NONE) {
+                ret(reusedNode);
+                return;
             }
+            blockNode = tree.addNonTerminal(SyntaxKind.BLOCK);
+            beginSubtree(blockNode);
+            frames[frame + 2] = blockNode;
+            addToken(blockNode, TokenType.LBRACE);
+        } else {
+            blockNode = frames[frame + 2];
+            tree.addChild(blockNode, result);
+        }
+
+        if (tokens.hasToken(0) && !matchToken(TokenType.RBRACE)) {
+            callThen(frame, 1, BLOCK_ITEM, SyntaxTree.NONE);
+            return;
+        }
+        addToken(blockNode, TokenType.RBRACE);
+        outputSyntaxNode(blockNode);
+        endSubtree(blockNode);
+        ret(blockNode);
+    }
 
-            SyntaxNode nextAddExpNode = parseAddExp();
-            relExpNode.addChild(nextAddExpNode);
-            outputSyntaxNode(relExpNode);
+    private void stepBlockItem(int frame) {
+        if (frames[frame + 1] != 0) {
+            int blockItemNode = frames[frame + 2];
+            tree.addChild(blockItemNode, result);
+            requireProgress(frames[frame + 3]);
+            checkTask(frames[frame + 3]);
+            finish(blockItemNode);
+            return;
         }
 
-        return relExpNode;
+        int blockItemNode = tree.addNonTerminal(SyntaxKind.BLOCK_ITEM);
+        frames[frame + 2] = blockItemNode;
+        // 参数位记下开始前的单词下标, 供恢复模式检查是否读入了单词
+        frames[frame + 3] = tokens.getPreviousIndex();
+        if (matchAny(TokenSets.DECL_FIRST)) {
+            // 声明的嵌套深度固定, 直接递归
+            tree.addChild(blockItemNode, parseDecl());
+            finish(blockItemNode);
+        } else {
+            callThen(frame, 1, STMT, SyntaxTree.NONE);
+        }
     }
 
-    private SyntaxNode parseForStmt() {
-        SyntaxNode forStmtNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "ForStmt");
+    private void stepStmt(int frame) {
+        int stmtNode = frames[frame + 2];
+        switch (frames[frame + 1]) {
+            case 0:
+                stmtNode = tree.addNonTerminal(SyntaxKind.STMT);
+                frames[frame + 2] = stmtNode;
+                beginStmt(frame, stmtNode);
+                break;
+            case STMT_SEMICN:
+                tree.addChild(stmtNode, result);
+                expectToken(stmtNode, TokenType.SEMICN, "i");
+                finish(stmtNode);
+                break;
+            case STMT_IF_COND:
+                tree.addChild(stmtNode, result);
+                expectToken(stmtNode, TokenType.RPARENT, "j");
+                callThen(frame, STMT_IF_THEN, STMT, SyntaxTree.NONE);
+                break;
+            case STMT_IF_THEN:
+                tree.addChild(stmtNode, result);
+                if (tokens.hasToken(0) && matchToken(TokenType.ELSETK)) {
+                    addToken(stmtNode, TokenType.ELSETK);
+                    callThen(frame, STMT_LAST_CHILD, STMT, SyntaxTree.NONE);
+                } else {
+                    finish(stmtNode);
+                }
+                break;
+            case STMT_FOR_INIT:
+                tree.addChild(stmtNode, result);
+                forAfterInit(frame, stmtNode);
+                break;
+            case STMT_FOR_COND:
+                tree.addChild(stmtNode, result);
+                forAfterCond(frame, stmtNode);
+                break;
+            case STMT_FOR_UPDATE:
+                tree.addChild(stmtNode, result);
+                forBody(frame, stmtNode);
+                break;
+            case STMT_PRINTF_EXP:
+                tree.addChild(stmtNode, result);
+                printfArguments(frame, stmtNode);
+                break;
+            case STMT_ASSIGN_LVAL:
+                tree.addChild(stmtNode, result);
+                addToken(stmtNode, TokenType.ASSIGN);
+                callThen(frame, STMT_SEMICN, EXP, SyntaxTree.NONE);
+                break;
+            default:
+                // STMT_LAST_CHILD: 子语句或语句块是最后一个子节点
+                tree.addChild(stmtNode, result);
+                finish(stmtNode);
+                break;
+        }
+    }
 
-        SyntaxNode lValNode = parseLVal();
-        forStmtNode.addChild(lValNode);
+    /**
+     * 与 parseStmt 的分支顺序相同
+     */
+    private void beginStmt(int frame, int stmtNode) {
+        switch (stmtBranch()) {
+            case TokenSets.BRANCH_IF:
+                addToken(stmtNode, TokenType.IFTK);
+                addToken(stmtNode, TokenType.LPARENT);
+                callThen(frame, STMT_IF_COND, COND, SyntaxTree.NONE);
+                break;
+            case TokenSets.BRANCH_FOR:
+                addToken(stmtNode, TokenType.FORTK);
+                addToken(stmtNode, TokenType.LPARENT);
+                if (tokens.hasToken(0) && matchToken(TokenType.IDENFR)) {
+                    callThen(frame, STMT_FOR_INIT, FOR_STMT, SyntaxTree.NONE);
+                } else {
+                    forAfterInit(frame, stmtNode);
+                }
+                break;
+            case TokenSets.BRANCH_BREAK:
+            case TokenSets.BRANCH_CONTINUE:
+                addToken(stmtNode, TOKEN_TYPES[tokens.peekTypeOrdinal(0)]);
+                expectToken(stmtNode, TokenType.SEMICN, "i");
+                finish(stmtNode);
+                break;
+            case TokenSets.BRANCH_RETURN:
+                addToken(stmtNode, TokenType.RETURNTK);
+                expOrSemicn(frame, stmtNode);
+                break;
+            case TokenSets.BRANCH_PRINTF:
+                addToken(stmtNode, TokenType.PRINTFTK);
+                addToken(stmtNode, TokenType.LPARENT);
+                addToken(stmtNode, TokenType.STRCON);
+                printfArguments(frame, stmtNode);
+                break;
+            case TokenSets.BRANCH_BLOCK:
+                callThen(frame, STMT_LAST_CHILD, BLOCK, SyntaxTree.NONE);
+                break;
+            default:
+                if (startsAssign()) {
+                    callThen(frame, STMT_ASSIGN_LVAL, LVAL, SyntaxTree.NONE);
+                } else {
+                    expOrSemicn(frame, stmtNode);
+                }
+                break;
+        }
+    }
 
-        Token assignToken = consumeToken(TokenType.ASSIGN);
-        SyntaxNode assignNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, assignToken);
-        forStmtNode.addChild(assignNode);
-        outputToken(assignToken);
+    /**
+     * 可选的 Exp 和分号, 用于 return 语句和表达式语句
+     */
+    private void expOrSemicn(int frame, int stmtNode) {
+        if (startsExp()) {
+            callThen(frame, STMT_SEMICN, EXP, SyntaxTree.NONE);
+        } else {
+            expectToken(stmtNode, TokenType.SEMICN, "i");
+            finish(stmtNode);
+        }
+    }
 
-        SyntaxNode expNode = parseExp();
-        forStmtNode.addChild(expNode);
+    private void forAfterInit(int frame, int stmtNode) {
+        addToken(stmtNode, TokenType.SEMICN);
+        if (tokens.hasToken(0) && !(matchToken(TokenType.SEMICN))) {
+            callThen(frame, STMT_FOR_COND, COND, SyntaxTree.NONE);
+        } else {
+            forAfterCond(frame, stmtNode);
+        }
+    }
 
-        while (tokenIndex < tokens.size() && matchToken(TokenType.COMMA)) {
-            Token commaToken = consumeToken(TokenType.COMMA);
-            SyntaxNode commaNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, commaToken);
-            forStmtNode.addChild(commaNode);
-            outputToken(commaToken);
+    private void forAfterCond(int frame, int stmtNode) {
+        addToken(stmtNode, TokenType.SEMICN);
+        if (tokens.hasToken(0) && matchToken(TokenType.IDENFR)) {
+            callThen(frame, STMT_FOR_UPDATE, FOR_STMT, SyntaxTree.NONE);
+        } else {
+            forBody(frame, stmtNode);
+        }
+    }
 
-            SyntaxNode nextLValNode = parseLVal();
-            forStmtNode.addChild(nextLValNode);
+    private void forBody(int frame, int stmtNode) {
+        expectToken(stmtNode, TokenType.RPARENT, "j");
+        callThen(frame, STMT_LAST_CHILD, STMT, SyntaxTree.NONE);
+    }
 
-            Token nextAssignToken = consumeToken(TokenType.ASSIGN);
-            SyntaxNode nextAssignNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, nextAssignToken);
-            forStmtNode.addChild(nextAssignNode);
-            outputToken(nextAssignToken);
+    private void printfArguments(int frame, int stmtNode) {
+        if (tokens.hasToken(0) && matchToken(TokenType.COMMA)) {
+            addToken(stmtNode, TokenType.COMMA);
+            callThen(frame, STMT_PRINTF_EXP, EXP, SyntaxTree.NONE);
+            return;
+        }
+        expectToken(stmtNode, TokenType.RPARENT, "j");
+        expectToken(stmtNode, TokenType.SEMICN, "i");
+        finish(stmtNode);
+    }
 
-            SyntaxNode nextExpNode = parseExp();
-            forStmtNode.addChild(nextExpNode);
+    private void stepForStmt(int frame) {
+        int forStmtNode = frames[frame + 2];
+        switch (frames[frame + 1]) {
+            case 0:
+                frames[frame + 2] = tree.addNonTerminal(SyntaxKind.FOR_STMT);
+                callThen(frame, 1, LVAL, SyntaxTree.NONE);
+                break;
+            case 1:
+                tree.addChild(forStmtNode, result);
+                addToken(forStmtNode, TokenType.ASSIGN);
+                callThen(frame, 2, EXP, SyntaxTree.NONE);
+                break;
+            default:
+                tree.addChild(forStmtNode, result);
+                if (tokens.hasToken(0) && matchToken(TokenType.COMMA)) {
+                    addToken(forStmtNode, TokenType.COMMA);
+                    callThen(frame, 1, LVAL, SyntaxTree.NONE);
+                } else {
+                    finish(forStmtNode);
+                }
+                break;
         }
+    }
 
-        outputSyntaxNode(forStmtNode);
-        return forStmtNode;
+    /**
+     * Cond, Exp 和 ConstExp: 一个非终结符包住从 power 开始的二元运算链
+     */
+    private void stepWrapped(int frame, SyntaxKind kind, int power) {
+        if (frames[frame + 1] == 0) {
+            frames[frame + 2] = tree.addNonTerminal(kind);
+            callThen(frame, 1, BINARY_EXP, power);
+            return;
+        }
+        int node = frames[frame + 2];
+        tree.addChild(node, result);
+        finish(node);
     }
 
-    private SyntaxNode parseMainFuncDef() {
-        SyntaxNode mainFuncDefNode = new SyntaxNode(SyntaxNode.NodeType.NON_TERMINAL, "MainFuncDef");
+    /**
+     * 与 parseBinaryExp 相同, 各级节点保存在共享栈上, 栈帧只记下共享栈的下标
+     */
+    private void stepBinaryExp(int frame) {
+        int power = frames[frame + 3];
+        if (frames[frame + 1] == 0) {
+            int base = reserve(2 * (BindingPower.MUL + 1));
+            frames[frame + 2] = base;
+            openLevels(base, power);
+            callThen(frame, 1, UNARY_EXP, SyntaxTree.NONE);
+            return;
+        }
 
-        Token intToken = consumeToken(TokenType.INTTK);
-        SyntaxNode intNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, intToken);
-        mainFuncDefNode.addChild(intNode);
-        outputToken(intToken);
+        int base = frames[frame + 2];
+        int next = reduceOperand(base, power, result);
+        if (next < power) {
+            int binaryExpNode = stack[base + 2 * power];
+            stackTop = base;
+            ret(binaryExpNode);
+            return;
+        }
+        shiftOperator(base, next);
+        call(UNARY_EXP, SyntaxTree.NONE);
+    }
 
-        Token mainToken = consumeToken(TokenType.MAINTK);
-        SyntaxNode mainNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, mainToken);
-        mainFuncDefNode.addChild(mainNode);
-        outputToken(mainToken);
+    /**
+     * 与 parseUnaryExp 相同; 参数槽记下最内层的 UnaryExp, 节点槽记下暂存外层之前的共享栈顶
+     */
+    private void stepUnaryExp(int frame) {
+        if (frames[frame + 1] != 0) {
+            int unaryExpNode = frames[frame + 3];
+            tree.addChild(unaryExpNode, result);
+            if (frames[frame + 1] == 2) {
+                expectToken(unaryExpNode, TokenType.RPARENT, "j");
+            }
+            ret(closeUnaryExp(frames[frame + 2], unaryExpNode));
+            return;
+        }
 
-        Token lParenToken = consumeToken(TokenType.LPARENT);
-        SyntaxNode lParenNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, lParenToken);
-        mainFuncDefNode.addChild(lParenNode);
-        outputToken(lParenToken);
+        frames[frame + 2] = stackTop;
+        int unaryExpNode = openUnaryExp();
+        frames[frame + 3] = unaryExpNode;
+        if (TokenSets.contains(TokenSets.PRIMARY_NOT_LVAL, tokens.peekTypeOrdinal(0))) {
+            callThen(frame, 1, PRIMARY_EXP, SyntaxTree.NONE);
+        } else if (preMatchToken(TokenType.LPARENT)) {
+            addToken(unaryExpNode, TokenType.IDENFR);
+            addToken(unaryExpNode, TokenType.LPARENT);
+            if (startsExp()) {
+                callThen(frame, 2, FUNC_RPARAMS, SyntaxTree.NONE);
+            } else {
+                expectToken(unaryExpNode, TokenType.RPARENT, "j");
+                ret(closeUnaryExp(frames[frame + 2], unaryExpNode));
+            }
+        } else {
+            callThen(frame, 1, PRIMARY_EXP, SyntaxTree.NONE);
+        }
+    }
 
-        if (tokenIndex < tokens.size() && matchToken(TokenType.RPARENT)) {
-            Token rParenToken = consumeToken(TokenType.RPARENT);
-            SyntaxNode rParenNode = new SyntaxNode(SyntaxNode.NodeType.TERMINAL, rParenToken);
-            mainFuncDefNode.addChild(rParenNode);
-            outputToken(rParenToken);
+    private void stepPrimaryExp(int frame) {
+        int primaryExpNode = frames[frame + 2];
+        switch (frames[frame + 1]) {
+            case 0:
+                primaryExpNode = tree.addNonTerminal(SyntaxKind.PRIMARY_EXP);
+                frames[frame + 2] = primaryExpNode;
+                if (tokens.hasToken(0) && matchToken(TokenType.LPARENT)) {
+                    addToken(primaryExpNode, TokenType.LPARENT);
+                    callThen(frame, 1, EXP, SyntaxTree.NONE);
+                } else if (tokens.hasToken(0) && matchToken(TokenType.IDENFR)) {
+                    callThen(frame, 2, LVAL, SyntaxTree.NONE);
+                } else {
+                    tree.addChild(primaryExpNode, parseNumber());
+                    finish(primaryExpNode);
+                }
+                break;
+            case 1:
+                tree.addChild(primaryExpNode, result);
+                expectToken(primaryExpNode, TokenType.RPARENT, "j");
+                finish(primaryExpNode);
+                break;
+            default:
+                tree.addChild(primaryExpNode, result);
+                finish(primaryExpNode);
+                break;
+        }
+    }
+
+    private void stepLVal(int frame) {
+        if (frames[frame + 1] != 0) {
+            int lValNode = frames[frame + 2];
+            tree.addChild(lValNode, result);
+            expectToken(lValNode, TokenType.RBRACK, "k");
+            finish(lValNode);
+            return;
+        }
+
+        int lValNode = tree.addNonTerminal(SyntaxKind.LVAL);
+        frames[frame + 2] = lValNode;
+        addToken(lValNode, TokenType.IDENFR);
+        if (tokens.hasToken(0) && matchToken(TokenType.LBRACK)) {
+            addToken(lValNode, TokenType.LBRACK);
+            callThen(frame, 1, EXP, SyntaxTree.NONE);
         } else {
-            errorHandler.reportError(getTokenLine(), "j");
+            finish(lValNode);
         }
+    }
 
-        SyntaxNode blockNode = parseBlock();
-        mainFuncDefNode.addChild(blockNode);
+    private void stepFuncRParams(int frame) {
+        if (frames[frame + 1] == 0) {
+            frames[frame + 2] = tree.addNonTerminal(SyntaxKind.FUNC_RPARAMS);
+            callThen(frame, 1, EXP, SyntaxTree.NONE);
+            return;
+        }
 
-        outputSyntaxNode(mainFuncDefNode);
-        return mainFuncDefNode;
+        int funcRParamsNode = frames[frame + 2];
+        tree.addChild(funcRParamsNode, result);
+        if (tokens.hasToken(1) && matchToken(TokenType.COMMA)) {
+            addToken(funcRParamsNode, TokenType.COMMA);
+            call(EXP, SyntaxTree.NONE);
+        } else {
+            finish(funcRParamsNode);
+        }
+    }
+
+    /**
+     * 恢复模式下从出错位置退回最近的同步点; 只用于控制流, 不填充调用栈
+     */
+    private static final class SyntaxError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final SyntaxError INSTANCE = new SyntaxError();
+
+        private SyntaxError() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * FunctionTask 放弃解析, 直接退出到 parseFunction; 不被 SyntaxError 的恢复捕获
+     */
+    private static final class TaskAbandoned extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final TaskAbandoned INSTANCE = new TaskAbandoned();
+
+        private TaskAbandoned() {
+            super(null, null, false, false);
+        }
     }
-}
\ No newline at end of file
+}
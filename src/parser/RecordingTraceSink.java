@@ -0,0 +1,86 @@
+package parser;
+
+import lexer.Token;
+import lexer.TokenBuffer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 把输出事件按顺序记录在内存中, 之后原样转发给另一个 sink; 用于并行解析的函数各自缓存输出.
+ * 终结符只记录单词在 TokenBuffer 中的下标, 转发时再从当前的 TokenBuffer 取出单词, 不持有 Token 和它引用的源码
+ */
+class RecordingTraceSink implements ParseEventSink {
+    private static final SyntaxKind[] KINDS = SyntaxKind.values();
+
+    // 被记录的单词所在的缓冲区, 调用方没有给出下标时按偏移查找
+    private final TokenBuffer tokens;
+    // 终结符事件保存单词下标 (非负), 非终结符事件保存种类序号取反
+    private int[] events = new int[256];
+    private int size = 0;
+
+    RecordingTraceSink(TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    public void token(Token token) {
+        int index = tokens.indexOfStart(token.getOffset());
+        if (index < 0) {
+            throw new IllegalArgumentException("token not in buffer: " + token);
+        }
+        add(index);
+    }
+
+    @Override
+    public void token(Token token, int index) {
+        add(index);
+    }
+
+    @Override
+    public void nonTerminal(SyntaxKind kind) {
+        add(~kind.ordinal());
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    private void add(int event) {
+        if (size == events.length) {
+            events = Arrays.copyOf(events, size * 2);
+        }
+        events[size++] = event;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 追加 other 中 [from, to) 的事件, 单词下标平移 tokenShift
+     */
+    void appendRange(RecordingTraceSink other, int from, int to, int tokenShift) {
+        if (size + (to - from) > events.length) {
+            events = Arrays.copyOf(events, Math.max(size * 2, size + (to - from)));
+        }
+        for (int i = from; i < to; i++) {
+            int event = other.events[i];
+            events[size++] = event >= 0 ? event + tokenShift : event;
+        }
+    }
+
+    /**
+     * 按记录顺序把全部事件转发给 sink, 终结符从 tokens 中取出
+     */
+    void replayTo(ParseEventSink sink, TokenBuffer tokens) throws IOException {
+        for (int i = 0; i < size; i++) {
+            int event = events[i];
+            if (event >= 0) {
+                sink.token(tokens.getToken(event), event);
+            } else {
+                sink.nonTerminal(KINDS[~event]);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package parser;
+
+import lexer.TokenBuffer;
+
+import java.util.Arrays;
+
+/**
+ * 按源码字符偏移查找节点的索引, 建立在 finish 之后的 SyntaxTree 上.
+ * 构造时为每个单词预先算出它或它之前最近的、进入了树的单词, 以及每个进入树的单词与下一个进入树的单词之间
+ * 空隙所属的最内层节点 (两个终结符的最近公共祖先), 构造为 O(n); 之后单词按偏移有序,
+ * 二分查找偏移所在或之前的单词, nodeAt 为 O(log n), 与树的深度和恢复时跳过的单词数无关
+ */
+public class SpanIndex {
+    private final SyntaxTree tree;
+    private final TokenBuffer tokens;
+    // 单词下标对应的终结符, 没有进入树的单词为 NONE
+    private final int[] terminals;
+    // 下标不大于该单词的最后一个进入树的单词, 没有时为 -1
+    private final int[] treeTokens;
+    // 进入树的单词与下一个进入树的单词之间的最内层节点, 之后没有进入树的单词时为 NONE
+    private final int[] gapNodes;
+
+    public SpanIndex(SyntaxTree tree) {
+        this.tree = tree;
+        this.tokens = tree.getTokens();
+        int count = tokens.size();
+        this.terminals = new int[count];
+        this.treeTokens = new int[count];
+        this.gapNodes = new int[count];
+        Arrays.fill(terminals, SyntaxTree.NONE);
+        Arrays.fill(gapNodes, SyntaxTree.NONE);
+        for (int node = 0; node < tree.size(); node++) {
+            int token = tree.getTokenIndex(node);
+            if (token != SyntaxTree.NONE) {
+                terminals[token] = node;
+            }
+        }
+        int previous = -1;
+        for (int token = 0; token < count; token++) {
+            if (terminals[token] != SyntaxTree.NONE) {
+                if (previous >= 0) {
+                    // 从后一个终结符向上, 跳过以它为首单词的节点, 第一个更早开始的祖先同时覆盖前一个单词;
+                    // 每个节点只有一个首单词, 全部单词合计只访问每个节点一次
+                    int node = terminals[token];
+                    while (node != SyntaxTree.NONE && tree.getFirstTokenIndex(node) == token) {
+                        node = tree.getParent(node);
+                    }
+                    gapNodes[previous] = node;
+                }
+                previous = token;
+            }
+            treeTokens[token] = previous;
+        }
+    }
+
+    public SyntaxTree getTree() {
+        return tree;
+    }
+
+    /**
+     * 覆盖偏移 offset 的最内层节点: 落在单词内时为它的终结符, 落在单词之间的空白或注释中时为同时覆盖两侧单词的最内层节点;
+     * offset 在根节点范围之外时为 NONE
+     */
+    public int nodeAt(int offset) {
+        int token = tokenAtOrBefore(offset);
+        if (token < 0) {
+            return SyntaxTree.NONE;
+        }
+        int treeToken = treeTokens[token];
+        if (treeToken < 0) {
+            return SyntaxTree.NONE;
+        }
+        if (offset < tokens.getStart(treeToken) + tokens.getLength(treeToken)) {
+            return terminals[treeToken];
+        }
+        return gapNodes[treeToken];
+    }
+
+    /**
+     * 覆盖偏移 offset 的最内层 kind 节点, 没有时为 NONE. 在 nodeAt 之后沿父节点向上,
+     * 额外的步数是结果与最内层节点之间的层数
+     */
+    public int nodeAt(int offset, SyntaxKind kind) {
+        int node = nodeAt(offset);
+        while (node != SyntaxTree.NONE && tree.getKind(node) != kind) {
+            node = tree.getParent(node);
+        }
+        return node;
+    }
+
+    /**
+     * 起始偏移不大于 offset 的最后一个单词, 没有时为 -1
+     */
+    private int tokenAtOrBefore(int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokens.getStart(mid) <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+}
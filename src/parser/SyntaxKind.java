@@ -0,0 +1,86 @@
+package parser;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 语法成分的种类. 每个种类预先编码好输出行 "<名字>" 的字节,
+ * traced 为 false 的成分 (BlockItem, Decl, BType) 不写入 parser.txt
+ */
+public enum SyntaxKind {
+    COMP_UNIT("CompUnit"),
+    DECL("Decl", false),
+    CONST_DECL("ConstDecl"),
+    BTYPE("BType", false),
+    CONST_DEF("ConstDef"),
+    CONST_INIT_VAL("ConstInitVal"),
+    VAR_DECL("VarDecl"),
+    VAR_DEF("VarDef"),
+    INIT_VAL("InitVal"),
+    FUNC_DEF("FuncDef"),
+    MAIN_FUNC_DEF("MainFuncDef"),
+    FUNC_TYPE("FuncType"),
+    FUNC_FPARAMS("FuncFParams"),
+    FUNC_FPARAM("FuncFParam"),
+    BLOCK("Block"),
+    BLOCK_ITEM("BlockItem", false),
+    STMT("Stmt"),
+    FOR_STMT("ForStmt"),
+    EXP("Exp"),
+    COND("Cond"),
+    LVAL("LVal"),
+    PRIMARY_EXP("PrimaryExp"),
+    NUMBER("Number"),
+    UNARY_EXP("UnaryExp"),
+    UNARY_OP("UnaryOp"),
+    FUNC_RPARAMS("FuncRParams"),
+    MUL_EXP("MulExp"),
+    ADD_EXP("AddExp"),
+    REL_EXP("RelExp"),
+    EQ_EXP("EqExp"),
+    LAND_EXP("LAndExp"),
+    LOR_EXP("LOrExp"),
+    CONST_EXP("ConstExp");
+
+    private static final Map<String, SyntaxKind> BY_NAME = new HashMap<>();
+
+    static {
+        for (SyntaxKind kind : values()) {
+            BY_NAME.put(kind.name, kind);
+        }
+    }
+
+    private final String name;
+    private final boolean traced;
+    private final String traceLine;
+    private final byte[] encodedTraceLine;
+
+    SyntaxKind(String name) {
+        this(name, true);
+    }
+
+    SyntaxKind(String name, boolean traced) {
+        this.name = name;
+        this.traced = traced;
+        this.traceLine = "<" + name + ">";
+        this.encodedTraceLine = (traceLine + System.lineSeparator()).getBytes(Charset.defaultCharset());
+    }
+
+    /**
+     * 按文法中的名字查找, 没有对应种类时返回 null
+     */
+    public static SyntaxKind fromName(String name) {
+        return BY_NAME.get(name);
+    }
+
+    public String getName() { return name; }
+    public boolean isTraced() { return traced; }
+    /** 输出行 "<名字>", 不含换行 */
+    public String getTraceLine() { return traceLine; }
+
+    /**
+     * 按默认字符集编码, 含行分隔符的输出行, 调用方不得修改
+     */
+    byte[] getEncodedTraceLine() { return encodedTraceLine; }
+}
@@ -9,13 +9,34 @@ public class SyntaxNode {
     public enum NodeType { TERMINAL, NON_TERMINAL }
 
     private final NodeType type;
+    private final SyntaxKind kind;
     private final String syntaxType;
     private int lineNumber;
     private final Token token;
     private final List<SyntaxNode> children = new ArrayList<>();
 
+    public SyntaxNode(SyntaxKind kind) {
+        this.type = NodeType.NON_TERMINAL;
+        this.kind = kind;
+        this.syntaxType = kind.getName();
+        this.token = null;
+        this.lineNumber = -1;
+    }
+
+    /**
+     * 供 SyntaxTree 视图使用, 子节点和单词由子类提供
+     */
+    SyntaxNode(NodeType type, SyntaxKind kind) {
+        this.type = type;
+        this.kind = kind;
+        this.syntaxType = kind != null ? kind.getName() : null;
+        this.token = null;
+        this.lineNumber = -1;
+    }
+
     public SyntaxNode(NodeType type, String SyntaxType) {
         this.type = type;
+        this.kind = SyntaxKind.fromName(SyntaxType);
         this.syntaxType = SyntaxType;
         this.token = null;
         this.lineNumber = -1;
@@ -23,6 +44,7 @@ public class SyntaxNode {
 
     public SyntaxNode(NodeType type, Token token) {
         this.type = type;
+        this.kind = null;
         this.syntaxType = null;
         this.token = token;
         this.lineNumber = token.getLineNumber();
@@ -37,6 +59,8 @@ public class SyntaxNode {
 
     public NodeType getType() { return type; }
     public String getSyntaxType() { return syntaxType; }
+    /** 非终结符的种类, 终结符为 null */
+    public SyntaxKind getKind() { return kind; }
     public Token getToken() { return token; }
     public List<SyntaxNode> getChildren() { return children; }
     public int getLineNumber() {
@@ -50,6 +74,47 @@ public class SyntaxNode {
         return -1;
     }
 
+    /**
+     * 节点覆盖的第一个单词在 TokenBuffer 中的下标; 只有 SyntaxTree 的视图知道下标, 其他节点为 -1
+     */
+    public int getFirstTokenIndex() { return -1; }
+
+    /**
+     * 节点覆盖的最后一个单词在 TokenBuffer 中的下标; 只有 SyntaxTree 的视图知道下标, 其他节点为 -1
+     */
+    public int getLastTokenIndex() { return -1; }
+
+    /**
+     * 节点在源码中的起始字符偏移, 没有终结符或单词没有源码位置时为 -1
+     */
+    public int getStartOffset() {
+        Token first = boundToken(true);
+        return first == null ? -1 : first.getOffset();
+    }
+
+    /**
+     * 节点在源码中的结束字符偏移 (不含), 没有终结符或单词没有源码位置时为 -1
+     */
+    public int getEndOffset() {
+        Token last = boundToken(false);
+        return last == null || last.getOffset() < 0 ? -1 : last.getOffset() + last.getLength();
+    }
+
+    /**
+     * 沿第一个或最后一个子节点向下找到的终结符单词
+     */
+    private Token boundToken(boolean first) {
+        SyntaxNode current = this;
+        while (current.getType() == NodeType.NON_TERMINAL) {
+            List<SyntaxNode> children = current.getChildren();
+            if (children.isEmpty()) {
+                return null;
+            }
+            current = children.get(first ? 0 : children.size() - 1);
+        }
+        return current.getToken();
+    }
+
     @Override
     public String toString() {
         return type == NodeType.NON_TERMINAL ? syntaxType : token.toString();
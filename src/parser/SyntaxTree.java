@@ -0,0 +1,354 @@
+package parser;
+
+import lexer.Token;
+import lexer.TokenBuffer;
+
+import java.util.Arrays;
+
+/**
+ * 以并列的基本类型数组保存的语法树, 节点用下标表示:
+ * 种类 (SyntaxKind 序号, 终结符为 TERMINAL), 第一个子节点或终结符的单词下标, 下一个兄弟节点, 以及构建期间使用的最后一个子节点.
+ * 终结符只记录在 TokenBuffer 中的下标, 不再持有 Token 对象;
+ * 需要 SyntaxNode 的调用方通过 view 取得只读视图.
+ * finish 之后第一次查询父节点或单词范围时, 一次遍历算出每个节点的父节点和首尾单词下标, 之后的查询都是 O(1)
+ */
+public class SyntaxTree {
+    public static final int NONE = -1;
+    private static final byte TERMINAL = -1;
+    private static final SyntaxKind[] KINDS = SyntaxKind.values();
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final TokenBuffer tokens;
+    private byte[] kinds;
+    // 非终结符为第一个子节点, 终结符为单词下标
+    private int[] data;
+    // 只在构建期间使用, finish 之后为 null
+    private int[] lastChildren;
+    private int[] nextSiblings;
+    private int size = 0;
+    private int root = NONE;
+    // 节点的父节点和覆盖的首尾单词下标, finish 之后按需计算
+    private int[] parents;
+    private int[] firstTokens;
+    private int[] lastTokens;
+    private volatile boolean spansReady = false;
+
+    public SyntaxTree(TokenBuffer tokens) {
+        this(tokens, DEFAULT_CAPACITY);
+    }
+
+    public SyntaxTree(TokenBuffer tokens, int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        this.tokens = tokens;
+        this.kinds = new byte[capacity];
+        this.data = new int[capacity];
+        this.lastChildren = new int[capacity];
+        this.nextSiblings = new int[capacity];
+    }
+
+    /**
+     * 构建完成后调用: 数组截断到实际大小并释放构建用的 lastChildren, 之后不能再添加节点
+     */
+    public void finish() {
+        kinds = Arrays.copyOf(kinds, size);
+        data = Arrays.copyOf(data, size);
+        nextSiblings = Arrays.copyOf(nextSiblings, size);
+        lastChildren = null;
+    }
+
+    public int addNonTerminal(SyntaxKind kind) {
+        return add((byte) kind.ordinal(), NONE);
+    }
+
+    public int addTerminal(int tokenIndex) {
+        return add(TERMINAL, tokenIndex);
+    }
+
+    private int add(byte kind, int value) {
+        if (lastChildren == null) {
+            throw new IllegalStateException("SyntaxTree is finished");
+        }
+        if (size == kinds.length) {
+            grow();
+        }
+        kinds[size] = kind;
+        data[size] = value;
+        lastChildren[size] = NONE;
+        nextSiblings[size] = NONE;
+        return size++;
+    }
+
+    private void grow() {
+        int capacity = Math.max(kinds.length + (kinds.length >> 1), 16);
+        kinds = Arrays.copyOf(kinds, capacity);
+        data = Arrays.copyOf(data, capacity);
+        lastChildren = Arrays.copyOf(lastChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+    }
+
+    /**
+     * 将 child 追加为 parent 的最后一个子节点
+     */
+    public void addChild(int parent, int child) {
+        if (lastChildren == null) {
+            throw new IllegalStateException("SyntaxTree is finished");
+        }
+        if (isTerminal(parent)) {
+            throw new IllegalArgumentException("Terminal node " + parent + " cannot have children");
+        }
+        int last = lastChildren[parent];
+        if (last == NONE) {
+            data[parent] = child;
+        } else {
+            nextSiblings[last] = child;
+        }
+        lastChildren[parent] = child;
+    }
+
+    /**
+     * 把另一棵基于同一 TokenBuffer 的树的全部节点按原顺序追加到末尾, 返回 other 中 node 对应的新下标.
+     * 节点下标整体平移, 单词下标不变; 与在本树中直接构建这些节点的结果相同
+     */
+    public int append(SyntaxTree other, int node) {
+        if (other.tokens != tokens) {
+            throw new IllegalArgumentException("SyntaxTree built on a different TokenBuffer");
+        }
+        other.checkNode(node);
+        return appendRange(other, 0, other.size, 0) + node;
+    }
+
+    /**
+     * 把 other 中连续构建的节点 [from, to) 按原顺序追加到末尾, 返回 from 对应的新下标.
+     * 区间内的节点下标整体平移, 指向区间外的兄弟节点置为 NONE, 终结符的单词下标加上 tokenShift;
+     * other 可以已经 finish, 也可以基于另一个 TokenBuffer (增量分析中编辑前的单词)
+     */
+    public int appendRange(SyntaxTree other, int from, int to, int tokenShift) {
+        if (lastChildren == null) {
+            throw new IllegalStateException("SyntaxTree is finished");
+        }
+        if (from < 0 || from > to || to > other.size) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for size " + other.size);
+        }
+        int offset = size - from;
+        while (size + to - from > kinds.length) {
+            grow();
+        }
+        for (int i = from; i < to; i++) {
+            byte kind = other.kinds[i];
+            int value = other.data[i];
+            kinds[i + offset] = kind;
+            data[i + offset] = kind == TERMINAL ? value + tokenShift : shift(value, from, to, offset);
+            lastChildren[i + offset] = NONE;
+            nextSiblings[i + offset] = shift(other.nextSiblings[i], from, to, offset);
+        }
+        size += to - from;
+        return from + offset;
+    }
+
+    private static int shift(int node, int from, int to, int offset) {
+        return node >= from && node < to ? node + offset : NONE;
+    }
+
+    public void setRoot(int root) {
+        this.root = root;
+    }
+
+    public int getRoot() { return root; }
+    public int size() { return size; }
+    public TokenBuffer getTokens() { return tokens; }
+
+    public boolean isTerminal(int node) {
+        return kinds[checkNode(node)] == TERMINAL;
+    }
+
+    /**
+     * 非终结符的种类, 终结符为 null
+     */
+    public SyntaxKind getKind(int node) {
+        byte kind = kinds[checkNode(node)];
+        return kind == TERMINAL ? null : KINDS[kind];
+    }
+
+    /**
+     * 终结符在 TokenBuffer 中的下标, 非终结符为 NONE
+     */
+    public int getTokenIndex(int node) {
+        return isTerminal(node) ? data[node] : NONE;
+    }
+
+    public Token getToken(int node) {
+        return isTerminal(node) ? tokens.getToken(data[node]) : null;
+    }
+
+    public int getFirstChild(int node) {
+        return isTerminal(node) ? NONE : data[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSiblings[checkNode(node)];
+    }
+
+    public int getChildCount(int node) {
+        int count = 0;
+        for (int child = getFirstChild(node); child != NONE; child = nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 与 SyntaxNode.getLineNumber 相同: 终结符为单词行号, 非终结符为第一个子节点的行号, 没有子节点时为 -1
+     */
+    public int getLineNumber(int node) {
+        int current = checkNode(node);
+        while (kinds[current] != TERMINAL) {
+            current = data[current];
+            if (current == NONE) {
+                return -1;
+            }
+        }
+        return tokens.getLineNumber(data[current]);
+    }
+
+    /**
+     * 节点覆盖的第一个单词的下标, 子树中没有终结符时为 NONE
+     */
+    public int getFirstTokenIndex(int node) {
+        if (lastChildren != null) {
+            return tokenBound(node, true);
+        }
+        ensureSpans();
+        return firstTokens[checkNode(node)];
+    }
+
+    /**
+     * 节点覆盖的最后一个单词的下标, 子树中没有终结符时为 NONE
+     */
+    public int getLastTokenIndex(int node) {
+        if (lastChildren != null) {
+            return tokenBound(node, false);
+        }
+        ensureSpans();
+        return lastTokens[checkNode(node)];
+    }
+
+    /**
+     * 节点在源码中的起始字符偏移, 子树中没有终结符或单词没有源码位置时为 -1
+     */
+    public int getStartOffset(int node) {
+        int first = getFirstTokenIndex(node);
+        return first == NONE ? -1 : tokens.getStart(first);
+    }
+
+    /**
+     * 节点在源码中的结束字符偏移 (不含), 子树中没有终结符或单词没有源码位置时为 -1
+     */
+    public int getEndOffset(int node) {
+        int last = getLastTokenIndex(node);
+        if (last == NONE || tokens.getStart(last) < 0) {
+            return -1;
+        }
+        return tokens.getStart(last) + tokens.getLength(last);
+    }
+
+    /**
+     * 节点的父节点, 根节点和不在树中的节点为 NONE; 只能在 finish 之后调用
+     */
+    public int getParent(int node) {
+        if (lastChildren != null) {
+            throw new IllegalStateException("SyntaxTree is not finished");
+        }
+        ensureSpans();
+        return parents[checkNode(node)];
+    }
+
+    /**
+     * 先记下每个节点的父节点, 再按单词顺序从每个终结符向上填写首单词, 按逆序填写尾单词;
+     * 向上遇到已经填写的祖先即可停止, 因此每个节点只访问常数次
+     */
+    private synchronized void ensureSpans() {
+        if (spansReady) {
+            return;
+        }
+        int[] parents = new int[size];
+        int[] firstTokens = new int[size];
+        int[] lastTokens = new int[size];
+        Arrays.fill(parents, NONE);
+        Arrays.fill(firstTokens, NONE);
+        Arrays.fill(lastTokens, NONE);
+        // 每个单词至多对应一个终结符
+        int[] terminals = new int[tokens.size()];
+        Arrays.fill(terminals, NONE);
+        for (int node = 0; node < size; node++) {
+            if (kinds[node] == TERMINAL) {
+                terminals[data[node]] = node;
+                continue;
+            }
+            for (int child = data[node]; child != NONE; child = nextSiblings[child]) {
+                parents[child] = node;
+            }
+        }
+        for (int token = 0; token < terminals.length; token++) {
+            for (int node = terminals[token]; node != NONE && firstTokens[node] == NONE; node = parents[node]) {
+                firstTokens[node] = token;
+            }
+        }
+        for (int token = terminals.length - 1; token >= 0; token--) {
+            for (int node = terminals[token]; node != NONE && lastTokens[node] == NONE; node = parents[node]) {
+                lastTokens[node] = token;
+            }
+        }
+        this.parents = parents;
+        this.firstTokens = firstTokens;
+        this.lastTokens = lastTokens;
+        spansReady = true;
+    }
+
+    /**
+     * 构建期间的查询: 子树中的终结符按单词顺序排列, 因此只需找到先序遍历中的第一个或最后一个终结符
+     */
+    private int tokenBound(int node, boolean first) {
+        int[] pending = new int[16];
+        int top = 0;
+        pending[top++] = checkNode(node);
+        int bound = NONE;
+        while (top > 0) {
+            int current = pending[--top];
+            if (kinds[current] == TERMINAL) {
+                if (first) {
+                    return data[current];
+                }
+                bound = data[current];
+                continue;
+            }
+            // 倒序压栈, 使子节点按顺序出栈
+            int base = top;
+            for (int child = data[current]; child != NONE; child = nextSiblings[child]) {
+                if (top == pending.length) {
+                    pending = Arrays.copyOf(pending, top * 2);
+                }
+                pending[top++] = child;
+            }
+            for (int i = base, j = top - 1; i < j; i++, j--) {
+                int swap = pending[i];
+                pending[i] = pending[j];
+                pending[j] = swap;
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * 节点的 SyntaxNode 视图, 每次调用都会生成新的视图对象
+     */
+    public SyntaxNode view(int node) {
+        return new ArenaSyntaxNode(this, checkNode(node));
+    }
+
+    private int checkNode(int node) {
+        if (node < 0 || node >= size) {
+            throw new IndexOutOfBoundsException("Node " + node + " out of bounds for size " + size);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,66 @@
+package parser;
+
+import lexer.TokenType;
+
+/**
+ * 语法分析中用到的 FIRST 集合, 以 TokenType 序号为位的 long 位集表示, 判断一个单词是否属于集合只需一次位运算;
+ * 恢复模式的同步集合, 以及 Stmt 按第一个单词选择分支的表. 单词种类不超过 64 个
+ */
+final class TokenSets {
+    // Exp 的 FIRST 集合, 也是 FuncRParams 和 return 之后可选 Exp 的判断条件
+    static final long EXP_FIRST = of(TokenType.PLUS, TokenType.MINU, TokenType.NOT,
+            TokenType.IDENFR, TokenType.LPARENT, TokenType.INTCON);
+    // 不以标识符开头的 PrimaryExp, 以标识符开头时还要区分函数调用和 LVal
+    static final long PRIMARY_NOT_LVAL = of(TokenType.LPARENT, TokenType.INTCON);
+    static final long UNARY_OP = of(TokenType.PLUS, TokenType.MINU, TokenType.NOT);
+    // Block 中 Decl 的 FIRST 集合
+    static final long DECL_FIRST = of(TokenType.CONSTTK, TokenType.INTTK, TokenType.STATICTK);
+
+    // 恢复模式下 BlockItem 的同步集合: 分号, 右大括号, 以及语句和声明开头的关键字
+    static final long BLOCK_ITEM_SYNC = of(TokenType.SEMICN, TokenType.RBRACE,
+            TokenType.IFTK, TokenType.FORTK, TokenType.BREAKTK, TokenType.CONTINUETK, TokenType.RETURNTK,
+            TokenType.PRINTFTK, TokenType.CONSTTK, TokenType.INTTK, TokenType.STATICTK);
+
+    static final int BRANCH_OTHER = 0;
+    static final int BRANCH_IF = 1;
+    static final int BRANCH_FOR = 2;
+    static final int BRANCH_BREAK = 3;
+    static final int BRANCH_CONTINUE = 4;
+    static final int BRANCH_RETURN = 5;
+    static final int BRANCH_PRINTF = 6;
+    static final int BRANCH_BLOCK = 7;
+
+    private static final byte[] STMT_BRANCHES = new byte[TokenType.values().length];
+
+    static {
+        STMT_BRANCHES[TokenType.IFTK.ordinal()] = BRANCH_IF;
+        STMT_BRANCHES[TokenType.FORTK.ordinal()] = BRANCH_FOR;
+        STMT_BRANCHES[TokenType.BREAKTK.ordinal()] = BRANCH_BREAK;
+        STMT_BRANCHES[TokenType.CONTINUETK.ordinal()] = BRANCH_CONTINUE;
+        STMT_BRANCHES[TokenType.RETURNTK.ordinal()] = BRANCH_RETURN;
+        STMT_BRANCHES[TokenType.PRINTFTK.ordinal()] = BRANCH_PRINTF;
+        STMT_BRANCHES[TokenType.LBRACE.ordinal()] = BRANCH_BLOCK;
+    }
+
+    private TokenSets() {
+    }
+
+    static long of(TokenType... types) {
+        long set = 0;
+        for (TokenType type : types) {
+            set |= 1L << type.ordinal();
+        }
+        return set;
+    }
+
+    static boolean contains(long set, int typeOrdinal) {
+        return (set >>> typeOrdinal & 1L) != 0;
+    }
+
+    /**
+     * 以 typeOrdinal 开头的 Stmt 的分支, 赋值语句和表达式语句为 BRANCH_OTHER, 需要再向前查看
+     */
+    static int stmtBranch(int typeOrdinal) {
+        return STMT_BRANCHES[typeOrdinal];
+    }
+}
@@ -0,0 +1,39 @@
+package parser;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * TreeWalker 遍历 SyntaxTree 时的回调. 只有 getKinds 中的非终结符会收到 enter 和 exit,
+ * 节点以 SyntaxTree 中的下标传入, 不生成 SyntaxNode 视图; 多个访问器可以在同一次遍历中执行
+ */
+public interface TreeVisitor {
+    /**
+     * 需要回调的非终结符种类, 默认为全部; 遍历开始前读取一次
+     */
+    default Set<SyntaxKind> getKinds() {
+        return EnumSet.allOf(SyntaxKind.class);
+    }
+
+    /**
+     * 是否接收终结符回调, 默认不接收
+     */
+    default boolean visitsTerminals() {
+        return false;
+    }
+
+    /**
+     * 进入非终结符, 此时还没有访问它的子节点
+     */
+    default void enter(SyntaxTree tree, int node) {
+    }
+
+    /**
+     * 离开非终结符, 它的子节点都已访问
+     */
+    default void exit(SyntaxTree tree, int node) {
+    }
+
+    default void terminal(SyntaxTree tree, int node) {
+    }
+}
@@ -0,0 +1,105 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 把多个互相独立的 TreeVisitor 合并到一次遍历中: 构造时按种类预先分好每个非终结符要回调的访问器,
+ * 遍历用显式栈按先序进入, 后序离开, 任意深的树都不会 StackOverflowError.
+ * 同一节点上的访问器按构造时的顺序回调, 每个访问器看到的事件顺序与单独遍历时相同
+ */
+public class TreeWalker {
+    private static final SyntaxKind[] KINDS = SyntaxKind.values();
+
+    // 按 SyntaxKind 序号分好的访问器, 没有访问器的种类为空数组
+    private final TreeVisitor[][] byKind = new TreeVisitor[KINDS.length][];
+    private final TreeVisitor[] terminalVisitors;
+
+    public TreeWalker(TreeVisitor... visitors) {
+        List<TreeVisitor> terminals = new ArrayList<>();
+        List<List<TreeVisitor>> kinds = new ArrayList<>();
+        for (int i = 0; i < KINDS.length; i++) {
+            kinds.add(new ArrayList<>());
+        }
+        for (TreeVisitor visitor : visitors) {
+            for (SyntaxKind kind : visitor.getKinds()) {
+                kinds.get(kind.ordinal()).add(visitor);
+            }
+            if (visitor.visitsTerminals()) {
+                terminals.add(visitor);
+            }
+        }
+        for (int i = 0; i < KINDS.length; i++) {
+            byKind[i] = kinds.get(i).toArray(new TreeVisitor[0]);
+        }
+        this.terminalVisitors = terminals.toArray(new TreeVisitor[0]);
+    }
+
+    /**
+     * 从根节点遍历整棵树
+     */
+    public void walk(SyntaxTree tree) {
+        walk(tree, tree.getRoot());
+    }
+
+    /**
+     * 遍历 Parser.parse 返回的根节点 (或其中任一节点) 所在的子树; 只支持 SyntaxTree 的视图
+     */
+    public void walk(SyntaxNode node) {
+        if (!(node instanceof ArenaSyntaxNode)) {
+            throw new IllegalArgumentException("TreeWalker only walks SyntaxTree views");
+        }
+        ArenaSyntaxNode view = (ArenaSyntaxNode) node;
+        walk(view.getTree(), view.getNode());
+    }
+
+    /**
+     * 遍历以 root 为根的子树. 栈中的非负数表示待进入的节点, ~node 表示待离开的节点;
+     * 栈在每次遍历时分配, 访问器中可以再启动其他遍历
+     */
+    public void walk(SyntaxTree tree, int root) {
+        if (root == SyntaxTree.NONE) {
+            return;
+        }
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int entry = stack[--top];
+            if (entry < 0) {
+                int node = ~entry;
+                for (TreeVisitor visitor : byKind[tree.getKind(node).ordinal()]) {
+                    visitor.exit(tree, node);
+                }
+                continue;
+            }
+            if (tree.isTerminal(entry)) {
+                for (TreeVisitor visitor : terminalVisitors) {
+                    visitor.terminal(tree, entry);
+                }
+                continue;
+            }
+            for (TreeVisitor visitor : byKind[tree.getKind(entry).ordinal()]) {
+                visitor.enter(tree, entry);
+            }
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top++] = ~entry;
+            // 倒序压栈, 使子节点按顺序出栈
+            int base = top;
+            for (int child = tree.getFirstChild(entry); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = child;
+            }
+            for (int i = base, j = top - 1; i < j; i++, j--) {
+                int swap = stack[i];
+                stack[i] = stack[j];
+                stack[j] = swap;
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package parser;
+
+import lexer.Token;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+/**
+ * 逐行写入 BufferedWriter, 供仍以 BufferedWriter 构造 Parser 的调用方使用
+ */
+public class WriterTraceSink implements ParseEventSink {
+    private final BufferedWriter writer;
+
+    public WriterTraceSink(BufferedWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void token(Token token) throws IOException {
+        writer.write(token.toString());
+        writer.newLine();
+    }
+
+    @Override
+    public void nonTerminal(SyntaxKind kind) throws IOException {
+        writer.write(kind.getTraceLine());
+        writer.newLine();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+}